@@ -1,17 +1,16 @@
 package de.lostesburger.mySqlPlayerBridge.Commands.SubCommands.Clear;
 
-import de.craftcore.craftcore.global.mysql.MySqlError;
-import de.craftcore.craftcore.global.mysql.MySqlManager;
 import de.craftcore.craftcore.paper.command.commandmanager.ServerCommand;
+import de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.MySqlConnectionHandler;
 import de.lostesburger.mySqlPlayerBridge.Main;
 import de.lostesburger.mySqlPlayerBridge.Utils.Chat;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.command.CommandSender;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 public class ClearSubCommand implements ServerCommand {
     @Override
@@ -29,21 +28,15 @@ public class ClearSubCommand implements ServerCommand {
         String target = strings[0];
 
 
-        MySqlManager manager = Main.mySqlConnectionHandler.getManager();
+        MySqlConnectionHandler connectionHandler = Main.mySqlConnectionHandler;
 
         if(target.equalsIgnoreCase("*")){
-            List<Map<String, Object>> datas;
             try {
-                datas = manager.getAllEntries(Main.TABLE_NAME);
-                datas.forEach(data -> {
-                    try {
-                        manager.deleteEntry(Main.TABLE_NAME, "uuid", data.get("uuid"));
-                        Bukkit.getLogger().info("§cDeleted player: "+data.get("uuid"));
-                    } catch (MySqlError e) {
-                        throw new RuntimeException(e);
-                    }
-                });
-            } catch (MySqlError e) {
+                int deleted = connectionHandler.deleteAllEntries(Main.TABLE_NAME);
+                // the next saves have to write complete rows again
+                connectionHandler.getMySqlDataManager().resetAllPersistedStates();
+                Bukkit.getLogger().info("§cDeleted players: "+deleted);
+            } catch (SQLException e) {
                 throw new RuntimeException(e);
             }
         }else {
@@ -53,9 +46,10 @@ public class ClearSubCommand implements ServerCommand {
                 return;
             }
             try {
-                manager.deleteEntry(Main.TABLE_NAME, "uuid", player.getUniqueId());
+                connectionHandler.deleteEntry(Main.TABLE_NAME, player.getUniqueId());
+                connectionHandler.getMySqlDataManager().resetPersistedState(player.getUniqueId());
                 Bukkit.getLogger().info("§cDeleted player: "+player.getUniqueId());
-            } catch (MySqlError e) {
+            } catch (SQLException e) {
                 throw new RuntimeException(e);
             }
         }
@@ -0,0 +1,20 @@
+package de.lostesburger.mySqlPlayerBridge.Exceptions;
+
+import java.sql.SQLException;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Another server holds the lease of these players, writing the snapshot would overwrite newer data.
+ * Retrying does not help, the snapshot has to be dropped.
+ */
+public class LeaseLostException extends SQLException {
+    private final Set<UUID> players;
+
+    public LeaseLostException(Set<UUID> players){
+        super("Player data is owned by another server: " + players);
+        this.players = Set.copyOf(players);
+    }
+
+    public Set<UUID> getPlayers(){ return this.players; }
+}
@@ -0,0 +1,205 @@
+package de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection;
+
+import de.lostesburger.mySqlPlayerBridge.Main;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Small fixed-bound JDBC connection pool.
+ * Idle connections are reused LIFO, validated after being idle for a while,
+ * evicted down to the minimum size after the idle timeout and reported when borrowed for too long.
+ */
+public class ConnectionPool {
+    private static final long VALIDATE_AFTER_IDLE_MILLIS = 5000;
+
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long connectionTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final long idleTimeoutMillis;
+    private final long leakDetectionThresholdMillis;
+
+    private final LinkedBlockingDeque<IdleConnection> idle = new LinkedBlockingDeque<>();
+    private final ConcurrentHashMap<Connection, Borrow> borrowed = new ConcurrentHashMap<>();
+    private final Semaphore permits;
+    private volatile boolean closed = false;
+
+    public ConnectionPool(String jdbcUrl, String username, String password, FileConfiguration conf){
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+
+        this.maxSize = Math.max(1, conf.getInt("pool.max-size", 10));
+        this.minSize = Math.max(0, Math.min(this.maxSize, conf.getInt("pool.min-size", 2)));
+        this.connectionTimeoutMillis = conf.getLong("pool.connection-timeout", 5000);
+        this.validationTimeoutSeconds = Math.max(1, conf.getInt("pool.validation-timeout", 2));
+        this.idleTimeoutMillis = conf.getLong("pool.idle-timeout", 600) * 1000;
+        this.leakDetectionThresholdMillis = conf.getLong("pool.leak-detection-threshold", 0) * 1000;
+
+        this.permits = new Semaphore(this.maxSize, true);
+    }
+
+    public void start() throws SQLException {
+        for (int i = 0; i < this.minSize; i++) {
+            this.idle.addLast(new IdleConnection(this.open(), System.currentTimeMillis()));
+        }
+    }
+
+    public Connection borrow() throws SQLException {
+        if(this.closed) throw new SQLException("Connection pool is closed");
+        try {
+            if(!this.permits.tryAcquire(this.connectionTimeoutMillis, TimeUnit.MILLISECONDS)){
+                throw new SQLException("Timed out after " + this.connectionTimeoutMillis + "ms waiting for a database connection (" + this.maxSize + " in use)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            Connection connection = this.takeIdle();
+            if(connection == null) connection = this.open();
+
+            StackTraceElement[] trace = this.leakDetectionThresholdMillis > 0 ? Thread.currentThread().getStackTrace() : null;
+            this.borrowed.put(connection, new Borrow(System.currentTimeMillis(), Thread.currentThread().getName(), trace));
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+
+    public void release(Connection connection, boolean broken){
+        if(this.borrowed.remove(connection) == null) return;
+        try {
+            if(broken || this.closed || connection.isClosed()){
+                this.closeQuietly(connection);
+                return;
+            }
+            if(!connection.getAutoCommit()){
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            this.idle.addFirst(new IdleConnection(connection, System.currentTimeMillis()));
+        } catch (SQLException e) {
+            this.closeQuietly(connection);
+        } finally {
+            this.permits.release();
+        }
+    }
+
+    private Connection takeIdle(){
+        IdleConnection candidate;
+        while ((candidate = this.idle.pollFirst()) != null) {
+            if(System.currentTimeMillis() - candidate.since() < VALIDATE_AFTER_IDLE_MILLIS) return candidate.connection();
+            if(this.isValid(candidate.connection())) return candidate.connection();
+            this.closeQuietly(candidate.connection());
+        }
+        return null;
+    }
+
+    private Connection open() throws SQLException {
+        return DriverManager.getConnection(this.jdbcUrl, this.username, this.password);
+    }
+
+    private boolean isValid(Connection connection){
+        try {
+            return connection.isValid(this.validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Evicts idle connections beyond the minimum size, refills up to it and reports leaked connections.
+     * Runs on an async timer.
+     */
+    public void maintain(){
+        if(this.closed) return;
+        long now = System.currentTimeMillis();
+
+        int idleCount = this.idle.size();
+        Iterator<IdleConnection> iterator = this.idle.descendingIterator();
+        while (iterator.hasNext() && idleCount > this.minSize) {
+            IdleConnection candidate = iterator.next();
+            if(now - candidate.since() < this.idleTimeoutMillis) continue;
+            if(this.idle.remove(candidate)){
+                this.closeQuietly(candidate.connection());
+                idleCount--;
+            }
+        }
+
+        while (this.idle.size() + this.borrowed.size() < this.minSize) {
+            try {
+                this.idle.addLast(new IdleConnection(this.open(), now));
+            } catch (SQLException e) {
+                Main.getInstance().getLogger().warning("Could not refill database connection pool: " + e.getMessage());
+                break;
+            }
+        }
+
+        if(this.leakDetectionThresholdMillis <= 0) return;
+        for (Map.Entry<Connection, Borrow> entry : this.borrowed.entrySet()) {
+            Borrow borrow = entry.getValue();
+            if(borrow.reported || now - borrow.since < this.leakDetectionThresholdMillis) continue;
+            borrow.reported = true;
+
+            Throwable origin = new Throwable("Connection borrowed by thread " + borrow.thread);
+            origin.setStackTrace(borrow.trace);
+            Main.getInstance().getLogger().log(Level.WARNING, "Possible database connection leak: connection in use for "
+                    + ((now - borrow.since) / 1000) + "s", origin);
+        }
+    }
+
+    public void close(){
+        this.closed = true;
+        IdleConnection candidate;
+        while ((candidate = this.idle.pollFirst()) != null) {
+            this.closeQuietly(candidate.connection());
+        }
+        for (Connection connection : this.borrowed.keySet()) {
+            this.closeQuietly(connection);
+        }
+        this.borrowed.clear();
+    }
+
+    public int getActiveCount(){ return this.borrowed.size(); }
+    public int getIdleCount(){ return this.idle.size(); }
+    public int getMaxSize(){ return this.maxSize; }
+
+    private void closeQuietly(Connection connection){
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    private record IdleConnection(Connection connection, long since) {}
+
+    private static final class Borrow {
+        private final long since;
+        private final String thread;
+        private final StackTraceElement[] trace;
+        private volatile boolean reported = false;
+
+        private Borrow(long since, String thread, StackTraceElement[] trace){
+            this.since = since;
+            this.thread = thread;
+            this.trace = trace == null ? new StackTraceElement[0] : trace;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection;
+
+import de.lostesburger.mySqlPlayerBridge.Main;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs all blocking database work of the plugin on its own virtual threads,
+ * so JDBC calls and retry waits never occupy the common pool or the server's async scheduler.
+ * At most maxConcurrency tasks run at once, the rest wait cheaply on their virtual thread.
+ */
+public class DatabaseExecutor implements Executor {
+    private final ExecutorService executor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("MySqlPlayerBridge-IO-", 0).factory());
+    private final Semaphore permits;
+
+    public DatabaseExecutor(int maxConcurrency){
+        this.permits = new Semaphore(Math.max(1, maxConcurrency), true);
+    }
+
+    @Override
+    public void execute(Runnable task){
+        this.executor.execute(() -> {
+            this.permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                Main.getInstance().getLogger().warning("Database task failed: " + e.getMessage());
+                if(Main.DEBUG) e.printStackTrace();
+            } finally {
+                this.permits.release();
+            }
+        });
+    }
+
+    /**
+     * Waits up to 30 seconds for running tasks, new ones are rejected.
+     */
+    public void close(){
+        this.executor.shutdown();
+        try {
+            if(!this.executor.awaitTermination(30, TimeUnit.SECONDS)){
+                Main.getInstance().getLogger().warning("Database tasks still running after shutdown timeout");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.Migrations;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * One versioned schema change. Steps must be idempotent, a server may be stopped halfway through.
+ */
+public record Migration(int version, String description, Step step) {
+
+    public interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+}
@@ -0,0 +1,341 @@
+package de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.Migrations;
+
+import de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.MySqlConnectionHandler;
+import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.DataChecksum;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.PlayerLeases;
+
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Brings the player data tables to the newest schema version.
+ * Applied versions are recorded in {main-table-name}_schema_version, a named database lock
+ * keeps several servers from migrating the same tables at once.
+ */
+public class SchemaMigrator {
+    private static final int BACKFILL_CHUNK_SIZE = 5000;
+    private static final int LOCK_TIMEOUT_SECONDS = 300;
+
+    private final MySqlConnectionHandler connectionHandler;
+    private final Logger logger;
+    private final List<Migration> migrations = new ArrayList<>();
+
+    public SchemaMigrator(MySqlConnectionHandler connectionHandler){
+        this.connectionHandler = connectionHandler;
+        this.logger = Main.getInstance().getLogger();
+
+        this.migrations.add(new Migration(1, "create player data tables", this::createTables));
+        this.migrations.add(new Migration(2, "content checksum column", this::addChecksumColumn));
+        this.migrations.add(new Migration(3, "unique uuid per table", this::addUniqueUuid));
+        this.migrations.add(new Migration(4, "BINARY(16) uuid primary keys", this::binaryUuidPrimaryKeys));
+        this.migrations.add(new Migration(5, "narrow text column types", this::narrowColumnTypes));
+        this.migrations.add(new Migration(6, "binary item columns", this::binaryItemColumns));
+        this.migrations.add(new Migration(7, "data version and lease columns", this::addLeaseColumns));
+        this.migrations.add(new Migration(8, "item slot table", this::createItemSlotTable));
+    }
+
+    public static String[] playerTables(){
+        return new String[]{Main.TABLE_NAME, Main.TABLE_NAME_EFFECTS, Main.TABLE_NAME_ADVANCEMENTS,
+                Main.TABLE_NAME_STATS, Main.TABLE_NAME_SELECTED_HOTBAR_SLOT, Main.TABLE_NAME_SATURATION};
+    }
+
+    public void migrate() throws SQLException {
+        this.connectionHandler.withConnection(connection -> {
+            String lockName = "mpb_schema_" + Main.TABLE_NAME;
+            if(!this.acquireLock(connection, lockName)){
+                throw new SQLException("Could not acquire schema migration lock " + lockName + " within " + LOCK_TIMEOUT_SECONDS + "s");
+            }
+            try {
+                this.createVersionTable(connection);
+                int current = this.getCurrentVersion(connection);
+
+                for (Migration migration : this.migrations) {
+                    if(migration.version() <= current) continue;
+
+                    this.logger.info("Applying schema migration v" + migration.version() + ": " + migration.description());
+                    long start = System.currentTimeMillis();
+                    migration.step().apply(connection);
+                    this.recordVersion(connection, migration);
+                    this.logger.info("Schema migration v" + migration.version() + " finished in " + (System.currentTimeMillis() - start) + "ms");
+                }
+            } finally {
+                this.releaseLock(connection, lockName);
+            }
+            return null;
+        });
+    }
+
+    private boolean acquireLock(Connection connection, String lockName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            statement.setString(1, lockName);
+            statement.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() && result.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void releaseLock(Connection connection, String lockName) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, lockName);
+            statement.executeQuery().close();
+        }
+    }
+
+    private void createVersionTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + Main.TABLE_NAME_SCHEMA_VERSION + "` (" +
+                    "`version` INT NOT NULL PRIMARY KEY, " +
+                    "`description` VARCHAR(255) NOT NULL, " +
+                    "`applied_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        }
+    }
+
+    private int getCurrentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT COALESCE(MAX(`version`), 0) FROM `" + Main.TABLE_NAME_SCHEMA_VERSION + "`")) {
+            return result.next() ? result.getInt(1) : 0;
+        }
+    }
+
+    private void recordVersion(Connection connection, Migration migration) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("INSERT IGNORE INTO `" + Main.TABLE_NAME_SCHEMA_VERSION + "` (`version`, `description`) VALUES (?, ?)")) {
+            statement.setInt(1, migration.version());
+            statement.setString(2, migration.description());
+            statement.executeUpdate();
+        }
+    }
+
+    /*
+     * v1: the original layout, used to be created through CraftCore
+     */
+    private void createTables(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + Main.TABLE_NAME + "` (" +
+                    "`uuid` VARCHAR(36), `inventory` LONGTEXT, `enderchest` LONGTEXT, `armor` LONGTEXT, " +
+                    "`gamemode` TEXT, `exp_level` INT, `exp` FLOAT, `health` DOUBLE, `saturation` FLOAT, `money` DOUBLE, " +
+                    "`world` TEXT, `x` DOUBLE, `y` DOUBLE, `z` DOUBLE, `yaw` FLOAT, `pitch` FLOAT, " +
+                    "`server_type` TEXT, `serialization_type` TEXT)");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + Main.TABLE_NAME_EFFECTS + "` (`uuid` VARCHAR(36), `effects` LONGTEXT)");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + Main.TABLE_NAME_ADVANCEMENTS + "` (`uuid` VARCHAR(36), `advancements` LONGTEXT)");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + Main.TABLE_NAME_STATS + "` (`uuid` VARCHAR(36), `stats` LONGTEXT)");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + Main.TABLE_NAME_SELECTED_HOTBAR_SLOT + "` (`uuid` VARCHAR(36), `slot` INT)");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + Main.TABLE_NAME_SATURATION + "` (`uuid` VARCHAR(36), `saturation` FLOAT, `food_level` INT)");
+        }
+    }
+
+    /*
+     * v2
+     */
+    private void addChecksumColumn(Connection connection) throws SQLException {
+        if(this.columnType(connection, Main.TABLE_NAME, DataChecksum.COLUMN) != null) return;
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("ALTER TABLE `" + Main.TABLE_NAME + "` ADD COLUMN `" + DataChecksum.COLUMN + "` BIGINT NULL");
+        }
+    }
+
+    /*
+     * v3: upserts need a unique uuid. The baseline tables have no column telling which of several rows of a uuid is newer,
+     * so nothing is guessed: under a write lock, copies of a uuid with identical content are reduced to one row,
+     * uuids with differing rows stop the migration and are listed for the admin to resolve.
+     */
+    private void addUniqueUuid(Connection connection) throws SQLException {
+        for (String table : playerTables()) {
+            if(this.hasUniqueUuid(connection, table)) continue;
+
+            List<String> conflicts;
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("LOCK TABLES `" + table + "` WRITE");
+                try {
+                    conflicts = this.removeIdenticalDuplicates(connection, table);
+                    if(conflicts.isEmpty()){
+                        statement.executeUpdate("ALTER TABLE `" + table + "` ADD UNIQUE KEY `uuid_unique` (`uuid`)");
+                    }
+                } finally {
+                    statement.executeUpdate("UNLOCK TABLES");
+                }
+            }
+            if(!conflicts.isEmpty()){
+                throw new SQLException("Table " + table + " contains different rows for the same player, keep the right row of each uuid and restart: "
+                        + String.join(", ", conflicts));
+            }
+        }
+    }
+
+    /**
+     * @return uuids whose rows differ, those are left untouched
+     */
+    private List<String> removeIdenticalDuplicates(Connection connection, String table) throws SQLException {
+        List<String> duplicated = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT `uuid` FROM `" + table + "` WHERE `uuid` IS NOT NULL GROUP BY `uuid` HAVING COUNT(*) > 1")) {
+            while (result.next()) duplicated.add(result.getString("uuid"));
+        }
+
+        List<String> conflicts = new ArrayList<>();
+        for (String uuid : duplicated) {
+            List<List<Object>> rows = new ArrayList<>();
+            try (PreparedStatement select = connection.prepareStatement("SELECT * FROM `" + table + "` WHERE `uuid` = ?")) {
+                select.setString(1, uuid);
+                try (ResultSet result = select.executeQuery()) {
+                    int columns = result.getMetaData().getColumnCount();
+                    while (result.next()) {
+                        List<Object> row = new ArrayList<>();
+                        for (int i = 1; i <= columns; i++) {
+                            Object value = result.getObject(i);
+                            // byte arrays only compare by content when wrapped
+                            row.add(value instanceof byte[] bytes ? ByteBuffer.wrap(bytes) : value);
+                        }
+                        rows.add(row);
+                    }
+                }
+            }
+            if(rows.stream().distinct().count() > 1){
+                conflicts.add(uuid);
+                continue;
+            }
+            try (PreparedStatement delete = connection.prepareStatement("DELETE FROM `" + table + "` WHERE `uuid` = ? LIMIT " + (rows.size() - 1))) {
+                delete.setString(1, uuid);
+                delete.executeUpdate();
+            }
+            this.logger.info("Removed " + (rows.size() - 1) + " identical copies of player " + uuid + " from " + table);
+        }
+        return conflicts;
+    }
+
+    /*
+     * v4: VARCHAR(36) uuid -> BINARY(16) primary key.
+     * The new column is backfilled in chunks while the table stays usable. Rows other servers wrote in the meantime
+     * are backfilled under a write lock right before the column is swapped in, only rows without a valid uuid are dropped.
+     */
+    private void binaryUuidPrimaryKeys(Connection connection) throws SQLException {
+        for (String table : playerTables()) {
+            String type = this.columnType(connection, table, "uuid");
+            if(type != null && type.equalsIgnoreCase("BINARY")) continue;
+
+            this.logger.warning("Converting " + table + " to binary uuids. Servers running older MySqlPlayerBridge versions can not read this table afterwards!");
+            try (Statement statement = connection.createStatement()) {
+                if(this.columnType(connection, table, "uuid_bin") == null){
+                    statement.executeUpdate("ALTER TABLE `" + table + "` ADD COLUMN `uuid_bin` BINARY(16) NULL");
+                }
+
+                long total = 0;
+                int updated;
+                do {
+                    updated = this.backfillBinaryUuids(statement, table, " LIMIT " + BACKFILL_CHUNK_SIZE);
+                    total += updated;
+                } while (updated > 0);
+                this.logger.info("Backfilled " + total + " binary uuids in " + table);
+
+                statement.executeUpdate("LOCK TABLES `" + table + "` WRITE");
+                try {
+                    int late = this.backfillBinaryUuids(statement, table, "");
+                    if(late > 0) this.logger.info("Backfilled " + late + " binary uuids written to " + table + " during the migration");
+                    this.removeInvalidUuids(statement, table);
+
+                    statement.executeUpdate("ALTER TABLE `" + table + "` DROP COLUMN `uuid`, " +
+                            "CHANGE COLUMN `uuid_bin` `uuid` BINARY(16) NOT NULL FIRST, ADD PRIMARY KEY (`uuid`)");
+                } finally {
+                    statement.executeUpdate("UNLOCK TABLES");
+                }
+            }
+        }
+    }
+
+    private int backfillBinaryUuids(Statement statement, String table, String limit) throws SQLException {
+        return statement.executeUpdate("UPDATE `" + table + "` SET `uuid_bin` = UNHEX(REPLACE(`uuid`, '-', '')) " +
+                "WHERE `uuid_bin` IS NULL AND CHAR_LENGTH(REPLACE(`uuid`, '-', '')) = 32" + limit);
+    }
+
+    /**
+     * Rows whose uuid is missing or no valid uuid can not be keyed, each one is logged before it is deleted.
+     */
+    private void removeInvalidUuids(Statement statement, String table) throws SQLException {
+        List<String> invalid = new ArrayList<>();
+        try (ResultSet result = statement.executeQuery("SELECT `uuid` FROM `" + table + "` WHERE `uuid_bin` IS NULL")) {
+            while (result.next()) invalid.add(result.getString("uuid"));
+        }
+        if(invalid.isEmpty()) return;
+
+        for (String uuid : invalid) {
+            this.logger.warning("Removing row without a valid uuid from " + table + ": " + (uuid == null ? "NULL" : "'" + uuid + "'"));
+        }
+        statement.executeUpdate("DELETE FROM `" + table + "` WHERE `uuid_bin` IS NULL");
+    }
+
+    /*
+     * v5
+     */
+    private void narrowColumnTypes(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("ALTER TABLE `" + Main.TABLE_NAME + "` " +
+                    "MODIFY COLUMN `gamemode` VARCHAR(16) NULL, " +
+                    "MODIFY COLUMN `world` VARCHAR(255) NULL, " +
+                    "MODIFY COLUMN `server_type` VARCHAR(255) NULL, " +
+                    "MODIFY COLUMN `serialization_type` VARCHAR(32) NULL");
+        }
+    }
+
+    /*
+     * v6: compressed item data is binary. Existing Base64 values keep their bytes and stay readable.
+     */
+    private void binaryItemColumns(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("ALTER TABLE `" + Main.TABLE_NAME + "` " +
+                    "MODIFY COLUMN `inventory` LONGBLOB NULL, " +
+                    "MODIFY COLUMN `enderchest` LONGBLOB NULL, " +
+                    "MODIFY COLUMN `armor` LONGBLOB NULL");
+        }
+    }
+
+    /*
+     * v7: row version and ownership lease for the cross-server handoff, see PlayerLeases
+     */
+    private void addLeaseColumns(Connection connection) throws SQLException {
+        if(this.columnType(connection, Main.TABLE_NAME, PlayerLeases.VERSION_COLUMN) != null) return;
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("ALTER TABLE `" + Main.TABLE_NAME + "` " +
+                    "ADD COLUMN `" + PlayerLeases.VERSION_COLUMN + "` BIGINT NOT NULL DEFAULT 0, " +
+                    "ADD COLUMN `" + PlayerLeases.OWNER_COLUMN + "` VARCHAR(64) NULL, " +
+                    "ADD COLUMN `" + PlayerLeases.UNTIL_COLUMN + "` BIGINT NULL, " +
+                    "ADD INDEX `lease_owner_index` (`" + PlayerLeases.OWNER_COLUMN + "`)");
+        }
+    }
+
+    /*
+     * v8: per slot storage of inventory and ender chest, see ItemSlotStore
+     */
+    private void createItemSlotTable(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS `" + Main.TABLE_NAME_ITEM_SLOTS + "` (" +
+                    "`uuid` BINARY(16) NOT NULL, " +
+                    "`container` VARCHAR(16) NOT NULL, " +
+                    "`slot` SMALLINT NOT NULL, " +
+                    "`item` MEDIUMBLOB NOT NULL, " +
+                    "PRIMARY KEY (`uuid`, `container`, `slot`))");
+        }
+    }
+
+    private String columnType(Connection connection, String table, String column) throws SQLException {
+        try (ResultSet columns = connection.getMetaData().getColumns(connection.getCatalog(), null, table, column)) {
+            return columns.next() ? columns.getString("TYPE_NAME") : null;
+        }
+    }
+
+    private boolean hasUniqueUuid(Connection connection, String table) throws SQLException {
+        try (ResultSet indexes = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table, true, false)) {
+            while (indexes.next()) {
+                if("uuid".equalsIgnoreCase(indexes.getString("COLUMN_NAME"))) return true;
+            }
+        }
+        return false;
+    }
+}
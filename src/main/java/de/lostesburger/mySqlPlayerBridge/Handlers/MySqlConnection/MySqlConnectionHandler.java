@@ -1,86 +1,130 @@
 package de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection;
 
-import de.craftcore.craftcore.global.mysql.MySQL;
-import de.craftcore.craftcore.global.mysql.MySqlError;
-import de.craftcore.craftcore.global.mysql.MySqlManager;
+import de.craftcore.craftcore.global.scheduler.Scheduler;
 import de.lostesburger.mySqlPlayerBridge.Handlers.Errors.MySqlErrorHandler;
+import de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.Migrations.SchemaMigrator;
 import de.lostesburger.mySqlPlayerBridge.Main;
 import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.MySqlDataManager;
+import de.lostesburger.mySqlPlayerBridge.Utils.UuidUtils;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.UUID;
 
 public class MySqlConnectionHandler {
-    private final MySQL mySQL;
-    private final MySqlManager mySqlManager;
     private final MySqlDataManager mySqlDataManager;
 
+    private final ConnectionPool connectionPool;
+    private final DatabaseExecutor databaseExecutor;
+
     public MySqlConnectionHandler(String host, int port, String database, String username, String password) {
+        String jdbcUrl = "jdbc:mysql://" + host + ":" + port + "/" + database + "?characterEncoding=utf8";
+        this.connectionPool = new ConnectionPool(jdbcUrl, username, password, Main.mysqlConf);
         try {
-            this.mySQL = new MySQL(host, port, username, password, database);
-        } catch (Exception e) {
+            this.connectionPool.start();
+        } catch (SQLException e) {
             new MySqlErrorHandler().onInitialize();
             throw new RuntimeException(e);
         }
+        this.databaseExecutor = new DatabaseExecutor(Main.mysqlConf.getInt("io.max-concurrency", 10));
+        Main.schedulers.add(Scheduler.runTimerAsync(() -> this.databaseExecutor.execute(this.connectionPool::maintain), 30 * 20, 30 * 20, Main.getInstance()));
+
         try {
-            mySqlManager = new MySqlManager(mySQL);
-        } catch (MySqlError e) {
-            new MySqlErrorHandler().onManagerInitialize();
+            new SchemaMigrator(this).migrate();
+        } catch (SQLException e) {
+            new MySqlErrorHandler().onTableCreate();
             throw new RuntimeException(e);
         }
-        createTables();
 
-        this.mySqlDataManager = new MySqlDataManager(mySqlManager);
+        this.mySqlDataManager = new MySqlDataManager(this);
     }
 
-    private void createTables() {
+    /**
+     * Borrows a pooled connection for the duration of the action.
+     */
+    public <T> T withConnection(SqlAction<T> action) throws SQLException {
+        Connection connection = this.connectionPool.borrow();
+        boolean broken = false;
         try {
-            mySqlManager.createTable(Main.TABLE_NAME,
-                    MySqlManager.ColumnDefinition.varchar("uuid", 36),
-                    MySqlManager.ColumnDefinition.longText("inventory"),
-                    MySqlManager.ColumnDefinition.longText("enderchest"),
-                    MySqlManager.ColumnDefinition.longText("armor"),
-                    MySqlManager.ColumnDefinition.text("gamemode"),
-                    MySqlManager.ColumnDefinition.integer("exp_level"),
-                    MySqlManager.ColumnDefinition.Float("exp"),
-                    MySqlManager.ColumnDefinition.doubLe("health"),
-                    MySqlManager.ColumnDefinition.Float("saturation"),
-                    MySqlManager.ColumnDefinition.doubLe("money"),
-                    MySqlManager.ColumnDefinition.text("world"),
-                    MySqlManager.ColumnDefinition.doubLe("x"),
-                    MySqlManager.ColumnDefinition.doubLe("y"),
-                    MySqlManager.ColumnDefinition.doubLe("z"),
-                    MySqlManager.ColumnDefinition.Float("yaw"),
-                    MySqlManager.ColumnDefinition.Float("pitch"),
-                    MySqlManager.ColumnDefinition.text("server_type"),
-                    MySqlManager.ColumnDefinition.text("serialization_type")
-            );
-            mySqlManager.createTable(Main.TABLE_NAME_EFFECTS,
-                    MySqlManager.ColumnDefinition.varchar("uuid", 36),
-                    MySqlManager.ColumnDefinition.longText("effects")
-            );
-            mySqlManager.createTable(Main.TABLE_NAME_ADVANCEMENTS,
-                    MySqlManager.ColumnDefinition.varchar("uuid", 36),
-                    MySqlManager.ColumnDefinition.longText("advancements")
-            );
-            mySqlManager.createTable(Main.TABLE_NAME_STATS,
-                    MySqlManager.ColumnDefinition.varchar("uuid", 36),
-                    MySqlManager.ColumnDefinition.longText("stats")
-            );
-            mySqlManager.createTable(Main.TABLE_NAME_SELECTED_HOTBAR_SLOT,
-                    MySqlManager.ColumnDefinition.varchar("uuid", 36),
-                    MySqlManager.ColumnDefinition.integer("slot")
-            );
-            mySqlManager.createTable(Main.TABLE_NAME_SATURATION,
-                    MySqlManager.ColumnDefinition.varchar("uuid", 36),
-                    MySqlManager.ColumnDefinition.Float("saturation"),
-                    MySqlManager.ColumnDefinition.integer("food_level")
-            );
-        } catch (MySqlError e) {
-            new MySqlErrorHandler().onTableCreate();
-            throw new RuntimeException(e);
+            return action.run(connection);
+        } catch (SQLException e) {
+            // SQL state class 08 = connection exception
+            broken = e.getSQLState() != null && e.getSQLState().startsWith("08");
+            throw e;
+        } finally {
+            this.connectionPool.release(connection, broken);
         }
     }
 
-    public MySqlManager getManager(){ return mySqlManager; }
-    public MySQL getMySQL(){ return this.mySQL; }
+    public HashMap<String, Object> getEntry(String table, UUID uuid) throws SQLException {
+        return this.withConnection(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM `" + table + "` WHERE `uuid` = ? LIMIT 1")) {
+                statement.setBytes(1, UuidUtils.toBytes(uuid));
+                try (ResultSet result = statement.executeQuery()) {
+                    if(!result.next()) return null;
+
+                    ResultSetMetaData meta = result.getMetaData();
+                    HashMap<String, Object> entry = new HashMap<>();
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        entry.put(meta.getColumnLabel(i), result.getObject(i));
+                    }
+                    return entry;
+                }
+            }
+        });
+    }
+
+    public boolean entryExists(String table, UUID uuid) throws SQLException {
+        return this.withConnection(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM `" + table + "` WHERE `uuid` = ? LIMIT 1")) {
+                statement.setBytes(1, UuidUtils.toBytes(uuid));
+                try (ResultSet result = statement.executeQuery()) {
+                    return result.next();
+                }
+            }
+        });
+    }
+
+    public boolean tableExists(String table) throws SQLException {
+        return this.withConnection(connection -> {
+            try (ResultSet tables = connection.getMetaData().getTables(connection.getCatalog(), null, table, new String[]{"TABLE"})) {
+                return tables.next();
+            }
+        });
+    }
+
+    public int deleteEntry(String table, UUID uuid) throws SQLException {
+        return this.withConnection(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM `" + table + "` WHERE `uuid` = ?")) {
+                statement.setBytes(1, UuidUtils.toBytes(uuid));
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    public int deleteAllEntries(String table) throws SQLException {
+        return this.withConnection(connection -> {
+            try (var statement = connection.createStatement()) {
+                return statement.executeUpdate("DELETE FROM `" + table + "`");
+            }
+        });
+    }
+
+    public void close(){
+        this.mySqlDataManager.shutdown();
+        this.databaseExecutor.close();
+        this.connectionPool.close();
+    }
+
+    public interface SqlAction<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    public ConnectionPool getConnectionPool(){ return this.connectionPool; }
+    public DatabaseExecutor getDatabaseExecutor(){ return this.databaseExecutor; }
     public MySqlDataManager getMySqlDataManager(){ return this.mySqlDataManager; }
 }
@@ -6,6 +6,7 @@ import de.lostesburger.mySqlPlayerBridge.Managers.Command.CommandManager;
 import de.lostesburger.mySqlPlayerBridge.Managers.Modules.ModulesManager;
 import de.lostesburger.mySqlPlayerBridge.Managers.Player.PlayerManager;
 import de.lostesburger.mySqlPlayerBridge.Managers.PlayerBridge.PlayerBridgeManager;
+import de.lostesburger.mySqlPlayerBridge.Managers.ProgressTracker.ProgressTracker;
 import de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers.AdvancementDataManager.AdvancementDataManager;
 import de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers.EffectDataManager.EffectDataManager;
 import de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers.HotbarSelectionDataManager.HotbarSlotSelectionDataManager;
@@ -60,6 +61,7 @@ public final class Main extends JavaPlugin {
     public static StatsDataManager statsDataManager;
     public static HotbarSlotSelectionDataManager hotbarSlotSelectionDataManager;
     public static SaturationDataManager saturationDataManager;
+    public static ProgressTracker progressTracker;
 
     public static MySqlConnectionHandler mySqlConnectionHandler;
 
@@ -74,8 +76,11 @@ public final class Main extends JavaPlugin {
     public static String TABLE_NAME_STATS;
     public static String TABLE_NAME_SELECTED_HOTBAR_SLOT;
     public static String TABLE_NAME_SATURATION;
+    public static String TABLE_NAME_ITEM_SLOTS;
+    public static String TABLE_NAME_SCHEMA_VERSION;
 
     public static SerializationType serializationType = SerializationType.NBT_API;
+    public static boolean itemSlotStorage = false;
 
     public static boolean DEBUG = false;
 
@@ -114,6 +119,8 @@ public final class Main extends JavaPlugin {
         TABLE_NAME_STATS = TABLE_NAME + "_stats";
         TABLE_NAME_SELECTED_HOTBAR_SLOT = TABLE_NAME  + "_selected_hotbar_slot";
         TABLE_NAME_SATURATION = TABLE_NAME + "_saturation";
+        TABLE_NAME_ITEM_SLOTS = TABLE_NAME + "_item_slots";
+        TABLE_NAME_SCHEMA_VERSION = TABLE_NAME + "_schema_version";
 
         this.getLogger().log(Level.INFO, "Loading/Creating configuration ...");
         BukkitYMLConfig ymlConfigMessages = new BukkitYMLConfig(this, "lang/"+LANGUAGE+".yml");
@@ -160,6 +167,8 @@ public final class Main extends JavaPlugin {
          * Modules
          */
         modulesManager = new ModulesManager();
+        serializationType = SerializationType.fromConfig(config.getString("serialization.mode"));
+        itemSlotStorage = config.getBoolean("serialization.slot-storage", false);
 
 
         /**
@@ -222,6 +231,7 @@ public final class Main extends JavaPlugin {
         statsDataManager = new StatsDataManager();
         hotbarSlotSelectionDataManager = new HotbarSlotSelectionDataManager();
         saturationDataManager = new SaturationDataManager();
+        progressTracker = new ProgressTracker();
     }
 
 
@@ -237,7 +247,7 @@ public final class Main extends JavaPlugin {
 
         this.getLogger().log(Level.INFO, "Closing MySql connection...");
         if(mySqlConnectionHandler != null) {
-            mySqlConnectionHandler.getMySQL().closeConnection();
+            mySqlConnectionHandler.close();
         }
 
         this.getLogger().log(Level.INFO, "Stopping running scheduler tasks...");
@@ -246,7 +256,7 @@ public final class Main extends JavaPlugin {
 
     private void tryInitNBTSerializer() {
         try {
-            nbtSerializer = new NBTSerializer();
+            nbtSerializer = new NBTSerializer(config.getInt("serialization.item-cache-size", 0));
             getLogger().info("NBTSerializer initialized successfully");
         } catch (Exception e) {
             getLogger().severe("NBTSerializer could not be initialized:");
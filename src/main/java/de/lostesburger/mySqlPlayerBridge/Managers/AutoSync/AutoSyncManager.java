@@ -0,0 +1,89 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.AutoSync;
+
+import de.craftcore.craftcore.global.scheduler.Scheduler;
+import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Managers.Modules.ModulesManager;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.MySqlDataManager;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Periodic autosave. A position runs through the configured delay once per interval, staggered mode saves every player
+ * when the position passes its phase (uuid hash modulo delay), otherwise everyone is saved once the delay is through.
+ * In adaptive mode the interval stretches while saves pile up or the database is slow and shrinks again while it is idle,
+ * within syncTask.minDelay and syncTask.maxDelay. Quit and manual saves never wait for it.
+ */
+public class AutoSyncManager {
+    private static final int ADAPT_EVERY_TICKS = 20;
+    private static final double SLOW_LATENCY_MILLIS = 500;
+    private static final double IDLE_LATENCY_MILLIS = 50;
+
+    private final int delayTicks;
+    private final int minTicks;
+    private final int maxTicks;
+    private final boolean staggered;
+    private final boolean adaptive;
+    private int intervalTicks;
+    private double position = 0;
+    private long ticks = 0;
+
+    public AutoSyncManager(){
+        ModulesManager modules = Main.modulesManager;
+        this.delayTicks = Math.max(1, modules.syncTaskDelay);
+        this.minTicks = Math.max(1, Math.min(modules.syncTaskMinDelay, this.delayTicks));
+        this.maxTicks = Math.max(modules.syncTaskMaxDelay, this.delayTicks);
+        this.staggered = modules.syncTaskStaggered;
+        this.adaptive = modules.syncTaskAdaptive;
+        this.intervalTicks = this.delayTicks;
+
+        Main.schedulers.add(Scheduler.runTimerAsync(this::tick, 1, 1, Main.getInstance()));
+    }
+
+    private synchronized void tick(){
+        MySqlDataManager mySqlDataManager = Main.mySqlConnectionHandler.getMySqlDataManager();
+        if(this.adaptive && ++this.ticks % ADAPT_EVERY_TICKS == 0) this.adapt(mySqlDataManager);
+
+        // phases [from, from + passed) of the delay are due this tick, none or several depending on the interval
+        int from = (int) this.position;
+        this.position += (double) this.delayTicks / this.intervalTicks;
+        int passed = (int) this.position - from;
+        if(this.position >= this.delayTicks) this.position -= this.delayTicks;
+        if(passed == 0) return;
+
+        if(!this.staggered){
+            if(from + passed >= this.delayTicks) mySqlDataManager.savePlayersAsync(List.copyOf(Bukkit.getOnlinePlayers()), false);
+            return;
+        }
+        List<Player> due = new ArrayList<>();
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            int phase = Math.floorMod(player.getUniqueId().hashCode(), this.delayTicks);
+            if(Math.floorMod(phase - from, this.delayTicks) < passed) due.add(player);
+        }
+        if(!due.isEmpty()) mySqlDataManager.savePlayersAsync(due, false);
+    }
+
+    /**
+     * Backs off quickly while the database can not keep up, comes back slowly once it is idle again.
+     */
+    private void adapt(MySqlDataManager mySqlDataManager){
+        double latency = mySqlDataManager.getSaveLatencyMillis();
+        int pending = mySqlDataManager.getPendingSaveCount();
+        int interval = this.intervalTicks;
+
+        if(pending > Main.modulesManager.groupCommitMaxBatchSize || latency > SLOW_LATENCY_MILLIS){
+            interval = Math.min(this.maxTicks, interval + Math.max(1, interval / 2));
+        }else if(pending == 0 && latency < IDLE_LATENCY_MILLIS){
+            interval = Math.max(this.minTicks, interval - Math.max(1, interval / 20));
+        }
+        if(interval == this.intervalTicks) return;
+
+        if(Main.DEBUG){
+            System.out.println("Autosave interval " + this.intervalTicks / 20 + "s -> " + interval / 20 + "s (save latency "
+                    + Math.round(latency) + "ms, " + pending + " saves pending)");
+        }
+        this.intervalTicks = interval;
+    }
+}
@@ -1,6 +1,7 @@
 package de.lostesburger.mySqlPlayerBridge.Managers.Modules;
 
 import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.SaveVerificationMode;
 import org.bukkit.configuration.file.FileConfiguration;
 
 public class ModulesManager {
@@ -15,10 +16,18 @@ public class ModulesManager {
     public String pathSyncVaultEconomy;
     public String pathSyncInventory;
     public String pathSyncTaskDelay;
+    public String pathSyncTaskStaggered;
+    public String pathSyncTaskAdaptive;
+    public String pathSyncTaskMinDelay;
+    public String pathSyncTaskMaxDelay;
+    public String pathSyncTaskProgressRescan;
     public String pathSyncEffects;
     public String pathSyncAdvancements;
     public String pathSyncStats;
     public String pathSyncSelectedHotbarSlot;
+    public String pathSaveVerification;
+    public String pathGroupCommitMaxBatchSize;
+    public String pathGroupCommitWindow;
 
     public boolean kickOnSyncFail;
     public boolean syncEnderChest;
@@ -31,10 +40,18 @@ public class ModulesManager {
     public boolean syncInventory;
     public boolean syncVaultEconomy;
     public int syncTaskDelay;
+    public boolean syncTaskStaggered;
+    public boolean syncTaskAdaptive;
+    public int syncTaskMinDelay;
+    public int syncTaskMaxDelay;
+    public int syncTaskProgressRescan;
     public boolean syncEffects;
     public boolean syncAdvancements;
     public boolean syncStats;
     public boolean syncSelectedHotbarSlot;
+    public SaveVerificationMode saveVerificationMode;
+    public int groupCommitMaxBatchSize;
+    public long groupCommitWindowMillis;
 
 
     public ModulesManager(){
@@ -50,10 +67,18 @@ public class ModulesManager {
         this.pathSyncSaturation = "sync.saturation";
         this.pathSyncVaultEconomy = "sync.vaultEconomy";
         this.pathSyncTaskDelay = "syncTask.delay";
+        this.pathSyncTaskStaggered = "syncTask.staggered";
+        this.pathSyncTaskAdaptive = "syncTask.adaptive";
+        this.pathSyncTaskMinDelay = "syncTask.minDelay";
+        this.pathSyncTaskMaxDelay = "syncTask.maxDelay";
+        this.pathSyncTaskProgressRescan = "syncTask.progressRescan";
         this.pathSyncEffects = "sync.effects";
         this.pathSyncAdvancements = "sync.advancements";
         this.pathSyncStats = "sync.statistics";
         this.pathSyncSelectedHotbarSlot = "sync.selected_hotbar_slot";
+        this.pathSaveVerification = "settings.save-verification";
+        this.pathGroupCommitMaxBatchSize = "groupCommit.maxBatchSize";
+        this.pathGroupCommitWindow = "groupCommit.windowMillis";
 
 
         this.syncVaultEconomy = conf.getBoolean(this.pathSyncVaultEconomy);
@@ -67,9 +92,18 @@ public class ModulesManager {
         this.syncInventory = conf.getBoolean(this.pathSyncInventory);
         this.kickOnSyncFail = conf.getBoolean(this.pathKickOnSyncFail);
         this.syncTaskDelay = (conf.getInt(this.pathSyncTaskDelay)*20);
+        this.syncTaskStaggered = conf.getBoolean(this.pathSyncTaskStaggered, true);
+        this.syncTaskAdaptive = conf.getBoolean(this.pathSyncTaskAdaptive, true);
+        this.syncTaskMinDelay = (conf.getInt(this.pathSyncTaskMinDelay, 30)*20);
+        this.syncTaskMaxDelay = (conf.getInt(this.pathSyncTaskMaxDelay, 300)*20);
+        // never longer than the autosave delay, otherwise autosaves keep writing the same outdated progress
+        this.syncTaskProgressRescan = Math.max(20, Math.min(conf.getInt(this.pathSyncTaskProgressRescan, 90)*20, this.syncTaskDelay));
         this.syncEffects = conf.getBoolean(this.pathSyncEffects);
         this.syncAdvancements = conf.getBoolean(this.pathSyncAdvancements);
         this.syncStats = conf.getBoolean(this.pathSyncStats);
         this.syncSelectedHotbarSlot = conf.getBoolean(this.pathSyncSelectedHotbarSlot);
+        this.saveVerificationMode = SaveVerificationMode.fromConfig(conf.getString(this.pathSaveVerification));
+        this.groupCommitMaxBatchSize = conf.getInt(this.pathGroupCommitMaxBatchSize, 100);
+        this.groupCommitWindowMillis = conf.getLong(this.pathGroupCommitWindow, 50);
     }
 }
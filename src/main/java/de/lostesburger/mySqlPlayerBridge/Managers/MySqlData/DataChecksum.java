@@ -0,0 +1,38 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Checksum over the large content columns of the main table.
+ * Uses CRC32 so the database can recompute the same value with CRC32(CONCAT_WS(CHAR(31), ...)).
+ */
+public class DataChecksum {
+    public static final String COLUMN = "data_checksum";
+    public static final List<String> CONTENT_COLUMNS = List.of("inventory", "enderchest", "armor");
+    private static final byte SEPARATOR = 0x1F;
+
+    public static long compute(Map<String, Object> columns){
+        CRC32 crc = new CRC32();
+        boolean first = true;
+        for (String column : CONTENT_COLUMNS) {
+            Object value = columns.get(column);
+            if(value == null) continue;
+            if(!first) crc.update(SEPARATOR);
+            first = false;
+
+            if(value instanceof byte[] bytes){
+                crc.update(bytes);
+            }else {
+                crc.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return crc.getValue();
+    }
+
+    public static String sqlExpression(){
+        return "CRC32(CONCAT_WS(CHAR(31), `" + String.join("`, `", CONTENT_COLUMNS) + "`))";
+    }
+}
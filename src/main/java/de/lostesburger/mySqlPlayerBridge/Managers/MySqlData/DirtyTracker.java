@@ -0,0 +1,84 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers per player and module what was last written to the database.
+ * Modules are compared by value with the state they were collected from, never by a hash alone.
+ * Tracking starts when a player joins and ends on quit, players without tracking are always saved completely.
+ */
+public class DirtyTracker {
+    private final ConcurrentHashMap<UUID, PersistedState> players = new ConcurrentHashMap<>();
+
+    public void start(UUID uuid){
+        this.players.put(uuid, new PersistedState(PlayerSnapshot.currentSequence()));
+    }
+
+    public void stop(UUID uuid){
+        this.players.remove(uuid);
+    }
+
+    /**
+     * Forgets what was written, the next save of a tracked player writes every module again.
+     */
+    public void reset(UUID uuid){
+        this.players.computeIfPresent(uuid, (k, state) -> new PersistedState(PlayerSnapshot.currentSequence()));
+    }
+
+    public void resetAll(){
+        this.players.replaceAll((k, state) -> new PersistedState(PlayerSnapshot.currentSequence()));
+    }
+
+    public boolean isDirty(UUID uuid, SyncModule module, Object collected){
+        PersistedState state = this.players.get(uuid);
+        if(state == null) return true;
+        synchronized (state) {
+            PersistedModule persisted = state.modules.get(module);
+            return persisted == null || !Objects.equals(persisted.state(), collected);
+        }
+    }
+
+    /**
+     * @return the columns last written for this module, null if unknown
+     */
+    public Map<String, Object> getPersistedColumns(UUID uuid, SyncModule module){
+        PersistedState state = this.players.get(uuid);
+        if(state == null) return null;
+        synchronized (state) {
+            PersistedModule persisted = state.modules.get(module);
+            return persisted == null ? null : persisted.columns();
+        }
+    }
+
+    /**
+     * Called after the snapshot was committed. Snapshots finishing out of order never roll the state back.
+     */
+    public void markPersisted(PlayerSnapshot snapshot){
+        PersistedState state = this.players.get(snapshot.getUuid());
+        if(state == null || snapshot.getTrackedModules().isEmpty()) return;
+        synchronized (state) {
+            if(snapshot.getSequence() < state.sequence) return;
+            state.sequence = snapshot.getSequence();
+            state.modules.putAll(snapshot.getTrackedModules());
+        }
+    }
+
+    /**
+     * @param state what the module was collected from, must not change afterwards
+     */
+    public record PersistedModule(Object state, Map<String, Object> columns) {}
+
+    private static final class PersistedState {
+        private final EnumMap<SyncModule, PersistedModule> modules = new EnumMap<>(SyncModule.class);
+        // snapshots captured before tracking (re)started are never applied, e.g. of an earlier session finishing late
+        private long sequence;
+
+        private PersistedState(long sequence){
+            this.sequence = sequence;
+        }
+    }
+}
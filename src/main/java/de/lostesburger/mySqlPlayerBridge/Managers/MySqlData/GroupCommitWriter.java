@@ -0,0 +1,378 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
+
+import de.lostesburger.mySqlPlayerBridge.Exceptions.LeaseLostException;
+import de.lostesburger.mySqlPlayerBridge.Main;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Collects player snapshots for a short window (or until the batch is full) and writes them together:
+ * one multi-row upsert per table and a single commit for the whole group.
+ * Used by autosave, manual sync, the first save of new players and as write-behind queue for quits.
+ * Queued saves are tracked per player until written, so loads and direct saves can wait for them.
+ * Quit and manual saves go first, periodic autosaves wait behind them.
+ */
+public class GroupCommitWriter {
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long AWAIT_PENDING_SECONDS = 10;
+    private static final long MAX_RETRY_DELAY_MILLIS = 30000;
+    // weight of the newest write in the latency average
+    private static final double LATENCY_SMOOTHING = 0.2;
+    // how long older snapshots are kept from overwriting a final save, far longer than a capture waits for its handoff
+    private static final long FINAL_GUARD_MILLIS = 10 * 60 * 1000;
+
+    private final PlayerDataWriter playerDataWriter;
+    private final WriteAheadJournal journal;
+    private final int maxBatchSize;
+    private final long windowMillis;
+
+    private final PriorityBlockingQueue<PendingSave> queue = new PriorityBlockingQueue<>(64,
+            Comparator.comparing((PendingSave save) -> !save.priority).thenComparingLong(save -> save.snapshot.getSequence()));
+    // newest queued or in-flight save per player
+    private final ConcurrentHashMap<UUID, PendingSave> pending = new ConcurrentHashMap<>();
+    // last final (quit) save per player, autosaves captured before it are never written after it
+    private final ConcurrentHashMap<UUID, FinalSave> finalSaves = new ConcurrentHashMap<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+    private volatile double latencyMillis = 0;
+
+    /**
+     * @param journal takes saves that can not be written, null if disabled
+     */
+    public GroupCommitWriter(PlayerDataWriter playerDataWriter, WriteAheadJournal journal, int maxBatchSize, long windowMillis){
+        this.playerDataWriter = playerDataWriter;
+        this.journal = journal;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.windowMillis = Math.max(0, windowMillis);
+
+        this.flusher = new Thread(this::run, "MySqlPlayerBridge-GroupCommit");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Periodic autosave, written after all priority saves.
+     */
+    public CompletableFuture<Void> submit(PlayerSnapshot snapshot){
+        return this.submit(snapshot, false, false);
+    }
+
+    /**
+     * @param writeBehind keep retrying with backoff until the save is written or the writer closes,
+     *                    used when the player is gone and the snapshot is the only copy of the data
+     * @param priority quit and manual saves, written before queued autosaves
+     */
+    public CompletableFuture<Void> submit(PlayerSnapshot snapshot, boolean writeBehind, boolean priority){
+        return this.queue(this.reserve(snapshot, writeBehind, priority));
+    }
+
+    /**
+     * Registers the save as pending without queueing it yet, loads and direct saves of the player wait for it from now on.
+     * Used by the quit, which has to block loads right away but checks on the database executor whether to write at all.
+     * Hand the save to {@link #queue(PendingSave)} or {@link #cancel(PendingSave)} afterwards.
+     */
+    PendingSave reserve(PlayerSnapshot snapshot, boolean writeBehind, boolean priority){
+        PendingSave save = new PendingSave(snapshot, new CompletableFuture<>(), writeBehind, priority, 0);
+        if(!this.running){
+            save.future.completeExceptionally(new IllegalStateException("Group commit writer is closed"));
+            return save;
+        }
+        if(this.isOutdated(snapshot)){
+            if(Main.DEBUG) System.out.println("Dropping save captured before the quit save: " + snapshot.getPlayerName());
+            save.future.complete(null);
+            return save;
+        }
+        if(snapshot.isFinal()){
+            long now = System.currentTimeMillis();
+            this.finalSaves.values().removeIf(guard -> now - guard.at > FINAL_GUARD_MILLIS);
+            this.finalSaves.merge(snapshot.getUuid(), new FinalSave(snapshot.getSequence(), now),
+                    (current, next) -> next.sequence > current.sequence ? next : current);
+        }
+        // an older snapshot arriving late never hides the newer pending one
+        this.pending.merge(snapshot.getUuid(), save,
+                (current, next) -> next.snapshot.getSequence() > current.snapshot.getSequence() ? next : current);
+        return save;
+    }
+
+    CompletableFuture<Void> queue(PendingSave save){
+        // once closed, close() writes the reserved saves directly
+        if(!save.future.isDone() && this.running) this.queue.add(save);
+        return save.future;
+    }
+
+    /**
+     * Drops a reserved save without writing it.
+     */
+    void cancel(PendingSave save){
+        this.complete(save, null);
+    }
+
+    /**
+     * Blocks until the queued saves of this player are written or journaled, so a load or direct save can not be overtaken by an older snapshot.
+     * @return false if a save is still pending after the timeout, the caller must not go on as if it was written
+     */
+    public boolean awaitPending(UUID uuid){
+        if(Thread.currentThread() == this.flusher) return true;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(AWAIT_PENDING_SECONDS);
+        PendingSave save;
+        // a newer save may have been queued meanwhile, it has to be written as well
+        while ((save = this.pending.get(uuid)) != null) {
+            try {
+                save.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                Main.getInstance().getLogger().warning("Save of " + save.snapshot.getPlayerName() + " is still not written after " + AWAIT_PENDING_SECONDS + "s");
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                // failed for good, it was dumped to a file and retrying would not change the database
+                if(Main.DEBUG) System.out.println("Pending group commit save failed: " + uuid + " " + e.getCause().getMessage());
+            }
+            // completing removes the save, the loop must not spin on it
+            this.pending.remove(uuid, save);
+        }
+        return true;
+    }
+
+    public boolean hasPending(UUID uuid){ return this.pending.containsKey(uuid); }
+
+    /**
+     * @return sequence of the last final save of the player, 0 if there was none recently
+     */
+    public long getFinalSequence(UUID uuid){
+        FinalSave guard = this.finalSaves.get(uuid);
+        return guard == null ? 0 : guard.sequence;
+    }
+
+    private boolean isOutdated(PlayerSnapshot snapshot){
+        return !snapshot.isFinal() && this.getFinalSequence(snapshot.getUuid()) > snapshot.getSequence();
+    }
+
+    public int getQueueSize(){ return this.queue.size(); }
+
+    /**
+     * Queued, in-flight and retrying saves.
+     */
+    public int getPendingCount(){ return this.pending.size(); }
+
+    /**
+     * Moving average of the time a group write took, failed attempts included.
+     */
+    public double getLatencyMillis(){ return this.latencyMillis; }
+
+    /**
+     * Writes everything still queued and stops the flusher thread.
+     * Saves the flusher did not get to and write-behind saves waiting for a retry get one direct write,
+     * if that fails they go to the journal. Only saves neither of both takes fail.
+     */
+    public void close(){
+        this.running = false;
+        try {
+            this.flusher.join(30000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<PendingSave> left = new ArrayList<>();
+        this.queue.drainTo(left);
+        for (PendingSave save : left) {
+            if(!this.supersede(save)) this.writeDirectly(save);
+        }
+        for (PendingSave waiting : List.copyOf(this.pending.values())) {
+            this.writeDirectly(waiting);
+        }
+    }
+
+    private void writeDirectly(PendingSave save){
+        if(save.future.isDone() || this.holdBehindJournal(save)) return;
+        try {
+            this.playerDataWriter.write(List.of(save.snapshot), Main.modulesManager.saveVerificationMode);
+            this.complete(save, null);
+        } catch (SQLException | RuntimeException e) {
+            if(e instanceof LeaseLostException || !this.journal(save, e)) this.complete(save, e);
+        }
+    }
+
+    private void run(){
+        while (this.running || !this.queue.isEmpty()) {
+            try {
+                PendingSave first = this.queue.poll(1, TimeUnit.SECONDS);
+                if(first == null) continue;
+
+                List<PendingSave> batch = new ArrayList<>();
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + this.windowMillis;
+                while (this.running && batch.size() < this.maxBatchSize) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if(remaining <= 0) break;
+                    PendingSave next = this.queue.poll(remaining, TimeUnit.MILLISECONDS);
+                    if(next == null) break;
+                    batch.add(next);
+                }
+                this.queue.drainTo(batch, this.maxBatchSize - batch.size());
+
+                this.flush(batch);
+            } catch (InterruptedException e) {
+                if(!this.running) return;
+            } catch (RuntimeException e) {
+                Main.getInstance().getLogger().warning("Group commit flush failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void flush(List<PendingSave> batch){
+        // only the newest snapshot of a player is written, older ones finish together with it,
+        // even if the newer one is still queued behind them in a lower lane
+        LinkedHashMap<UUID, PendingSave> latest = new LinkedHashMap<>();
+        for (PendingSave save : batch) {
+            if(!this.supersede(save)) latest.put(save.snapshot.getUuid(), save);
+        }
+        if(latest.isEmpty()) return;
+        latest.values().removeIf(this::holdBehindJournal);
+        if(latest.isEmpty()) return;
+        List<PendingSave> saves = new ArrayList<>(latest.values());
+        List<PlayerSnapshot> snapshots = saves.stream().map(PendingSave::snapshot).toList();
+
+        Exception failure = null;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            long start = System.currentTimeMillis();
+            try {
+                this.playerDataWriter.write(snapshots, Main.modulesManager.saveVerificationMode);
+                this.recordLatency(System.currentTimeMillis() - start);
+                if(Main.DEBUG){
+                    System.out.println("Group commit wrote " + snapshots.size() + " players in " + (System.currentTimeMillis() - start) + "ms");
+                }
+                saves.forEach(save -> this.complete(save, null));
+                return;
+            } catch (SQLException | RuntimeException e) {
+                this.recordLatency(System.currentTimeMillis() - start);
+                failure = e;
+                // an owned row of another server fails every attempt, only writing one by one helps the others
+                if(e instanceof LeaseLostException) break;
+                if(attempt < MAX_ATTEMPTS && !this.sleepBeforeRetry(attempt)) break;
+            }
+        }
+
+        if(saves.size() == 1){
+            this.fail(saves.get(0), failure);
+            return;
+        }
+
+        // one broken row must not fail the whole group, write the players one by one
+        Main.getInstance().getLogger().warning("Group commit of " + saves.size() + " players failed, saving them one by one: " + failure.getMessage());
+        for (PendingSave save : saves) {
+            try {
+                this.playerDataWriter.write(List.of(save.snapshot), Main.modulesManager.saveVerificationMode);
+                this.complete(save, null);
+            } catch (SQLException | RuntimeException e) {
+                this.fail(save, e);
+            }
+        }
+    }
+
+    /**
+     * @return true if a newer save of the player is pending, the older one then finishes together with it,
+     *         or if it was captured before the player's final save and is dropped
+     */
+    private boolean supersede(PendingSave save){
+        if(this.isOutdated(save.snapshot)){
+            this.complete(save, null);
+            return true;
+        }
+        PendingSave newest = this.pending.get(save.snapshot.getUuid());
+        if(newest == null || newest == save || newest.snapshot.getSequence() <= save.snapshot.getSequence()) return false;
+        newest.future.whenComplete((ignored, error) -> this.complete(save, error));
+        return true;
+    }
+
+    /**
+     * Write-behind saves go back into the queue after a growing delay, unless a newer save of the player replaced them.
+     */
+    private void fail(PendingSave save, Throwable error){
+        if(!(error instanceof LeaseLostException) && this.journal(save, error)) return;
+        if(!save.writeBehind || !this.running || error instanceof LeaseLostException){
+            this.complete(save, error);
+            return;
+        }
+        UUID uuid = save.snapshot.getUuid();
+        PendingSave retry = save.retried();
+        if(!this.pending.replace(uuid, save, retry)){
+            this.complete(save, error);
+            return;
+        }
+
+        long delay = Math.min(MAX_RETRY_DELAY_MILLIS, 1000L << Math.min(retry.retries, 5));
+        Main.getInstance().getLogger().warning("Could not write player data of " + save.snapshot.getPlayerName() + ", retrying in " + delay + "ms: " + error.getMessage());
+        CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS).execute(() -> {
+            // close() writes it directly once the writer stopped
+            if(this.running) this.queue.add(retry);
+        });
+    }
+
+    /**
+     * Players with journaled saves stay in the journal until it is replayed, their order must not change.
+     * If the journal is full, the older records are replayed first, the save is only written once none of them is left.
+     * @return true if the save was journaled or failed and must not be written now
+     */
+    private boolean holdBehindJournal(PendingSave save){
+        UUID uuid = save.snapshot.getUuid();
+        if(this.journal == null || !this.journal.contains(uuid)) return false;
+        if(this.journal(save, null)) return true;
+        if(this.journal.replay(this.playerDataWriter) || !this.journal.contains(uuid)) return false;
+        this.fail(save, new SQLException("Save journal is full and older saves of " + save.snapshot.getPlayerName() + " are not written yet"));
+        return true;
+    }
+
+    /**
+     * @return true if the save was appended to the journal and counts as done
+     */
+    private boolean journal(PendingSave save, Throwable error){
+        if(this.journal == null || !this.journal.append(save.snapshot)) return false;
+        if(error != null){
+            Main.getInstance().getLogger().warning("Could not write player data of " + save.snapshot.getPlayerName() + ", kept in the save journal: " + error.getMessage());
+        }
+        this.complete(save, null);
+        return true;
+    }
+
+    private void recordLatency(long millis){
+        double average = this.latencyMillis;
+        this.latencyMillis = average == 0 ? millis : average + LATENCY_SMOOTHING * (millis - average);
+    }
+
+    private boolean sleepBeforeRetry(int attempt){
+        try {
+            Thread.sleep(100L * attempt);
+            return true;
+        } catch (InterruptedException e) {
+            return this.running;
+        }
+    }
+
+    private void complete(PendingSave save, Throwable error){
+        this.pending.remove(save.snapshot.getUuid(), save);
+        if(error == null){
+            save.future.complete(null);
+        }else {
+            save.future.completeExceptionally(error);
+        }
+    }
+
+    private record FinalSave(long sequence, long at) {}
+
+    record PendingSave(PlayerSnapshot snapshot, CompletableFuture<Void> future, boolean writeBehind, boolean priority, int retries) {
+        PendingSave retried(){ return new PendingSave(this.snapshot, this.future, this.writeBehind, this.priority, this.retries + 1); }
+    }
+}
@@ -0,0 +1,148 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
+
+import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Serialization.NBTSerialization.NBTSerializer;
+import de.lostesburger.mySqlPlayerBridge.Utils.UuidUtils;
+import org.bukkit.inventory.ItemStack;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Slot storage of inventory and ender chest: one row per (uuid, container, slot) holding the encoded item,
+ * the item column of the main table only refers to it. Saves write the slots whose bytes changed since the last save.
+ *
+ * In a snapshot the changes are the columns of the slot table: "container:slot" holds the new bytes or null
+ * for an emptied slot, "container:*" replaces all slots of the container.
+ */
+public class ItemSlotStore {
+    public static final String INVENTORY = "inventory";
+    public static final String ENDER_CHEST = "enderchest";
+    private static final String ALL_SLOTS = "*";
+    private static final int ROWS_PER_STATEMENT = 1000;
+
+    /**
+     * @return slot index -> encoded item of all non-empty slots, as tracked by the {@link DirtyTracker}
+     */
+    public static Map<String, Object> encode(ItemStack[] items) throws Exception {
+        LinkedHashMap<String, Object> slots = new LinkedHashMap<>();
+        for (int slot = 0; slot < items.length; slot++) {
+            ItemStack item = items[slot];
+            if(item == null || item.getType().isAir()) continue;
+            slots.put(Integer.toString(slot), Main.nbtSerializer.serializeItem(item));
+        }
+        return slots;
+    }
+
+    /**
+     * Adds the difference between the persisted and the current slots of a container to the snapshot changes.
+     * @param persisted tracked columns of the last save, containers not stored per slot yet are replaced completely
+     */
+    public static void putChanges(Map<String, Object> changes, String container, Map<String, Object> persisted, Map<String, Object> current){
+        if(persisted == null || !NBTSerializer.isSlotTableReference(persisted.get(container))){
+            changes.put(container + ":" + ALL_SLOTS, true);
+            current.forEach((slot, item) -> changes.put(container + ":" + slot, item));
+            return;
+        }
+        current.forEach((slot, item) -> {
+            if(!Arrays.equals((byte[]) persisted.get(slot), (byte[]) item)) changes.put(container + ":" + slot, item);
+        });
+        persisted.keySet().forEach(slot -> {
+            if(!slot.equals(container) && !current.containsKey(slot)) changes.put(container + ":" + slot, null);
+        });
+    }
+
+    /**
+     * Applies the slot changes of the snapshots, inside the transaction of the {@link PlayerDataWriter}.
+     */
+    static void write(Connection connection, List<PlayerSnapshot> snapshots) throws SQLException {
+        List<Object[]> replaced = new ArrayList<>();
+        List<Object[]> removed = new ArrayList<>();
+        List<Object[]> changed = new ArrayList<>();
+        for (PlayerSnapshot snapshot : snapshots) {
+            Map<String, Object> changes = snapshot.get(Main.TABLE_NAME_ITEM_SLOTS);
+            if(changes == null) continue;
+            byte[] uuid = UuidUtils.toBytes(snapshot.getUuid());
+            changes.forEach((key, item) -> {
+                int split = key.indexOf(':');
+                String container = key.substring(0, split);
+                String slot = key.substring(split + 1);
+                if(slot.equals(ALL_SLOTS)) replaced.add(new Object[]{uuid, container});
+                else if(item == null) removed.add(new Object[]{uuid, container, Integer.parseInt(slot)});
+                else changed.add(new Object[]{uuid, container, Integer.parseInt(slot), item});
+            });
+        }
+
+        String table = Main.TABLE_NAME_ITEM_SLOTS;
+        executeBatch(connection, "DELETE FROM `" + table + "` WHERE `uuid` = ? AND `container` = ?", replaced);
+        executeBatch(connection, "DELETE FROM `" + table + "` WHERE `uuid` = ? AND `container` = ? AND `slot` = ?", removed);
+
+        for (int from = 0; from < changed.size(); from += ROWS_PER_STATEMENT) {
+            List<Object[]> chunk = changed.subList(from, Math.min(changed.size(), from + ROWS_PER_STATEMENT));
+            String sql = "INSERT INTO `" + table + "` (`uuid`, `container`, `slot`, `item`) VALUES (?, ?, ?, ?)"
+                    + ", (?, ?, ?, ?)".repeat(chunk.size() - 1) + " ON DUPLICATE KEY UPDATE `item` = VALUES(`item`)";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                int index = 1;
+                for (Object[] row : chunk) {
+                    for (Object value : row) statement.setObject(index++, value);
+                }
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Reassembles the containers of a player, slots that can not be decoded stay empty.
+     * @return container -> items, empty arrays for containers without stored slots
+     */
+    static HashMap<String, ItemStack[]> load(Connection connection, UUID uuid, Collection<String> containers) throws SQLException {
+        HashMap<String, HashMap<Integer, byte[]>> stored = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT `container`, `slot`, `item` FROM `"
+                + Main.TABLE_NAME_ITEM_SLOTS + "` WHERE `uuid` = ?")) {
+            statement.setBytes(1, UuidUtils.toBytes(uuid));
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    stored.computeIfAbsent(result.getString("container"), k -> new HashMap<>())
+                            .put(result.getInt("slot"), result.getBytes("item"));
+                }
+            }
+        }
+
+        HashMap<String, ItemStack[]> items = new HashMap<>();
+        for (String container : containers) {
+            HashMap<Integer, byte[]> slots = stored.getOrDefault(container, new HashMap<>());
+            int size = Math.max(container.equals(INVENTORY) ? 41 : 27, slots.keySet().stream().mapToInt(slot -> slot + 1).max().orElse(0));
+            ItemStack[] contents = new ItemStack[size];
+            slots.forEach((slot, item) -> {
+                try {
+                    contents[slot] = Main.nbtSerializer.deserializeItem(item);
+                } catch (Exception e) {
+                    Main.getInstance().getLogger().warning("Failed to deserialize " + container + " slot " + slot + " for " + uuid + ": " + e.getMessage());
+                }
+            });
+            items.put(container, contents);
+        }
+        return items;
+    }
+
+    private static void executeBatch(Connection connection, String sql, List<Object[]> rows) throws SQLException {
+        if(rows.isEmpty()) return;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) statement.setObject(i + 1, row[i]);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+}
@@ -3,44 +3,160 @@ package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
 
 import de.craftcore.craftcore.global.minecraftVersion.Minecraft;
 import de.craftcore.craftcore.global.mysql.MySqlError;
-import de.craftcore.craftcore.global.mysql.MySqlManager;
 import de.craftcore.craftcore.global.scheduler.Scheduler;
 import de.craftcore.craftcore.global.scheduler.SchedulerException;
+import de.lostesburger.mySqlPlayerBridge.Exceptions.LeaseLostException;
 import de.lostesburger.mySqlPlayerBridge.Exceptions.NBTSerializationException;
-import de.lostesburger.mySqlPlayerBridge.Exceptions.NoPlayerDataException;
 import de.lostesburger.mySqlPlayerBridge.Handlers.Errors.MySqlErrorHandler;
+import de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.DatabaseExecutor;
+import de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.MySqlConnectionHandler;
 import de.lostesburger.mySqlPlayerBridge.Main;
 import de.lostesburger.mySqlPlayerBridge.Managers.Modules.ModulesManager;
+import de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers.SyncDataManager;
+import de.lostesburger.mySqlPlayerBridge.Serialization.NBTSerialization.ItemFragmentCache;
+import de.lostesburger.mySqlPlayerBridge.Serialization.NBTSerialization.NBTSerializer;
 import de.lostesburger.mySqlPlayerBridge.Utils.Chat;
+import de.lostesburger.mySqlPlayerBridge.Utils.FileUtils;
 import org.bukkit.Bukkit;
 import org.bukkit.GameMode;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 
 public class MySqlDataManager {
-    public final MySqlManager mySqlManager;
     public final boolean DEBUG = false;
+    private final MySqlConnectionHandler connectionHandler;
+    private final PlayerDataWriter playerDataWriter;
+    private final PlayerDataLoader playerDataLoader;
+    private final GroupCommitWriter groupCommitWriter;
+    private final SnapshotScheduler snapshotScheduler;
+    private final PlayerLeases playerLeases;
+    private final WriteAheadJournal journal;
+    private final AtomicBoolean replaying = new AtomicBoolean(false);
     
-    private final ConcurrentHashMap<UUID, ReentrantLock> playerLocks = new ConcurrentHashMap<>();
+    // held from loading until the apply really ran on the player's thread, so it can be released from any thread
+    private final ConcurrentHashMap<UUID, Semaphore> playerLocks = new ConcurrentHashMap<>();
+    // players whose loaded data is not applied yet, their current state must never be saved
+    private final Set<UUID> pendingApplies = ConcurrentHashMap.newKeySet();
+    private static final long APPLY_TIMEOUT_SECONDS = 30;
+    // whether a player has a row in the main table, kept for the session of the player
+    private final ConcurrentHashMap<UUID, Boolean> knownPlayers = new ConcurrentHashMap<>();
+    private final DirtyTracker dirtyTracker = new DirtyTracker();
+    private static final long PRELOAD_EXPIRY_MILLIS = 60000;
+    // data fetched during AsyncPlayerPreLoginEvent, waiting for the join
+    private final ConcurrentHashMap<UUID, PreloadedPlayerData> preloaded = new ConcurrentHashMap<>();
+
+    public MySqlDataManager(MySqlConnectionHandler connectionHandler){
+        this.connectionHandler = connectionHandler;
+        playerLeases = new PlayerLeases(connectionHandler);
+        playerDataWriter = new PlayerDataWriter(connectionHandler, playerLeases, this::markCreated);
+        playerDataLoader = new PlayerDataLoader(connectionHandler);
+        journal = this.openJournal();
+        groupCommitWriter = new GroupCommitWriter(playerDataWriter, journal, Main.modulesManager.groupCommitMaxBatchSize, Main.modulesManager.groupCommitWindowMillis);
+        snapshotScheduler = new SnapshotScheduler(connectionHandler.getDatabaseExecutor());
+
+        long renewTicks = playerLeases.getRenewIntervalSeconds() * 20L;
+        Main.schedulers.add(Scheduler.runTimerAsync(() -> connectionHandler.getDatabaseExecutor().execute(
+                () -> playerLeases.renew(this::holdsPlayer)), renewTicks, renewTicks, Main.getInstance()));
+        if(journal != null){
+            Main.schedulers.add(Scheduler.runTimerAsync(() -> {
+                if(!journal.isEmpty()) connectionHandler.getDatabaseExecutor().execute(this::replayJournal);
+            }, 20, 5 * 20, Main.getInstance()));
+        }
+    }
+
+    private WriteAheadJournal openJournal(){
+        if(!Main.mysqlConf.getBoolean("journal.enabled", true)) return null;
+        try {
+            File file = new File(Main.getInstance().getDataFolder(), "journal/saves.journal");
+            long sizeMb = Main.mysqlConf.getLong("journal.size-mb", 64);
+            // the journal is a single mapping, it can not be larger than 2GB
+            long maxSizeMb = Integer.MAX_VALUE / (1024 * 1024);
+            if(sizeMb < 1 || sizeMb > maxSizeMb){
+                Main.getInstance().getLogger().warning("journal.size-mb must be between 1 and " + maxSizeMb + ", using " + Math.max(1, Math.min(sizeMb, maxSizeMb)));
+                sizeMb = Math.max(1, Math.min(sizeMb, maxSizeMb));
+            }
+            return new WriteAheadJournal(file, (int) (sizeMb * 1024 * 1024));
+        } catch (IOException e) {
+            Main.getInstance().getLogger().severe("Could not open the save journal, failed saves can not be kept: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @return true if nothing is left in the journal
+     */
+    private boolean replayJournal(){
+        if(this.journal == null || this.journal.isEmpty()) return true;
+        if(!this.replaying.compareAndSet(false, true)) return false;
+        try {
+            return this.journal.replay(this.playerDataWriter);
+        } finally {
+            this.replaying.set(false);
+        }
+    }
+
+    /**
+     * Appends a save that could not be written, the player keeps playing instead of being kicked.
+     */
+    private boolean journalSnapshot(PlayerSnapshot snapshot){
+        if(this.journal == null || !this.journal.append(snapshot)) return false;
+        this.dirtyTracker.markPersisted(snapshot);
+        return true;
+    }
 
-    public MySqlDataManager(MySqlManager manager){
-        mySqlManager = manager;
+    /**
+     * Whether this server still needs the lease of a player: online, loading, prefetched or with a save pending.
+     */
+    private boolean holdsPlayer(UUID uuid){
+        return Bukkit.getPlayer(uuid) != null || this.playerLocks.containsKey(uuid)
+                || this.isPreloaded(uuid) || this.groupCommitWriter.hasPending(uuid)
+                || this.isJournaled(uuid);
     }
     
-    private ReentrantLock getPlayerLock(UUID uuid) {
-        return playerLocks.computeIfAbsent(uuid, k -> new ReentrantLock());
+    private Semaphore lockPlayer(UUID uuid) {
+        Semaphore lock = playerLocks.computeIfAbsent(uuid, k -> new Semaphore(1));
+        lock.acquireUninterruptibly();
+        return lock;
+    }
+
+    /**
+     * @return null if the player is locked, e.g. while loading, applying or saving
+     */
+    private Semaphore tryLockPlayer(UUID uuid) {
+        Semaphore lock = playerLocks.computeIfAbsent(uuid, k -> new Semaphore(1));
+        return lock.tryAcquire() ? lock : null;
+    }
+
+    private void unlockPlayer(UUID uuid, Semaphore lock) {
+        lock.release();
+        playerLocks.computeIfPresent(uuid, (k, current) ->
+                current == lock && current.availablePermits() == 1 && !current.hasQueuedThreads() ? null : current);
     }
 
     public boolean hasData(Player player){
@@ -49,140 +165,292 @@ public class MySqlDataManager {
             if(Main.DEBUG){
                 System.out.println("Checking if player has data! Player: "+player.getName());
             }
-            return this.mySqlManager.entryExists(Main.TABLE_NAME, Map.of("uuid", uuid.toString()));
-        } catch (MySqlError e) {
+            boolean exists = this.connectionHandler.entryExists(Main.TABLE_NAME, uuid);
+            this.knownPlayers.put(uuid, exists);
+            return exists;
+        } catch (SQLException e) {
             new MySqlErrorHandler().hasPlayerData(player);
             throw new RuntimeException(e);
         }
     }
 
+    private boolean isKnownPlayer(Player player){
+        Boolean known = this.knownPlayers.get(player.getUniqueId());
+        return known != null ? known : this.hasData(player);
+    }
+
+    /**
+     * Existence check for players that already left, a failed check counts as no data instead of kicking.
+     */
+    private boolean hasDataQuietly(UUID uuid, String name){
+        try {
+            return this.connectionHandler.entryExists(Main.TABLE_NAME, uuid);
+        } catch (SQLException e) {
+            Main.getInstance().getLogger().warning("Could not check player data of " + name + ", skipping save: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Players whose row was created by a save, only cached for players in a session.
+     */
+    private void markCreated(Set<UUID> created){
+        created.forEach(uuid -> this.knownPlayers.computeIfPresent(uuid, (k, known) -> true));
+    }
+
+    public void clearSession(UUID uuid){
+        this.knownPlayers.remove(uuid);
+        this.dirtyTracker.stop(uuid);
+    }
+
+    /**
+     * Called after player rows were deleted, cached existence and persisted module state are no longer valid.
+     */
+    public void resetPersistedState(UUID uuid){
+        this.knownPlayers.remove(uuid);
+        this.dirtyTracker.reset(uuid);
+    }
+
+    public void resetAllPersistedStates(){
+        this.knownPlayers.clear();
+        this.dirtyTracker.resetAll();
+    }
+
+    /**
+     * The complete main table row of a player, regardless of what changed.
+     * Items are always serialized into the row, never as reference to the slot table.
+     */
     public HashMap<String, Object> getCurrentData(Player player){
+        PlayerSnapshot snapshot = new PlayerSnapshot(player.getUniqueId(), player.getName(), null);
+        this.collectMainRow(player, snapshot, false);
+        return snapshot.getDataMap(Main.TABLE_NAME);
+    }
 
-        String gamemode = player.getGameMode().toString();
-        int exp_level = player.getLevel();
-        float exp = player.getExp();
-        double health = player.getHealth();
+    private void collectMainRow(Player player, PlayerSnapshot snapshot, boolean itemSlots){
+        HashMap<String, Object> map = new HashMap<>();
+
+        PlayerInventory inventory = player.getInventory();
+        if(itemSlots){
+            HashMap<String, Object> slotChanges = new HashMap<>();
+            this.collectSlots(player, snapshot, map, slotChanges, SyncModule.INVENTORY, ItemSlotStore.INVENTORY, inventory.getContents());
+            this.collectSlots(player, snapshot, map, slotChanges, SyncModule.ENDER_CHEST, ItemSlotStore.ENDER_CHEST, player.getEnderChest().getContents());
+            if(!slotChanges.isEmpty()) snapshot.put(Main.TABLE_NAME_ITEM_SLOTS, slotChanges);
+        }else {
+            this.collectItems(player, snapshot, map, SyncModule.INVENTORY, "inventory", inventory.getContents());
+            this.collectItems(player, snapshot, map, SyncModule.ENDER_CHEST, "enderchest", player.getEnderChest().getContents());
+        }
+        this.collectItems(player, snapshot, map, SyncModule.ARMOR, "armor", new ItemStack[]{
+                inventory.getBoots(),
+                inventory.getLeggings(),
+                inventory.getChestplate(),
+                inventory.getHelmet()
+        });
+
+        this.collectColumns(snapshot, map, SyncModule.GAMEMODE, Map.of("gamemode", player.getGameMode().toString()));
+        this.collectColumns(snapshot, map, SyncModule.EXP, Map.of("exp_level", player.getLevel(), "exp", player.getExp()));
+        this.collectColumns(snapshot, map, SyncModule.HEALTH, Map.of("health", player.getHealth()));
+        //map.put("saturation",saturation);
         double money = 0.0;
         if(Main.modulesManager.syncVaultEconomy){
             money = Main.vaultManager.getBalance(player);
         }
+        this.collectColumns(snapshot, map, SyncModule.MONEY, Map.of("money", money));
 
         Location location = player.getLocation();
-        String world = Objects.requireNonNull(location.getWorld()).getName();
-        double x = location.getX();
-        double y = location.getY();
-        double z = location.getZ();
-        float yaw = location.getYaw();
-        float pitch = location.getPitch();
-
-        HashMap<String, Object> map = new HashMap<>();
+        this.collectColumns(snapshot, map, SyncModule.LOCATION, Map.of(
+                "world", Objects.requireNonNull(location.getWorld()).getName(),
+                "x", location.getX(),
+                "y", location.getY(),
+                "z", location.getZ(),
+                "yaw", location.getYaw(),
+                "pitch", location.getPitch()
+        ));
+
+        if(map.isEmpty()) return;
         map.put("server_type", Main.serverType);
         map.put("serialization_type", Main.serializationType.toString());
-        map.put("gamemode", gamemode);
-        map.put("exp_level", exp_level);
-        map.put("exp", exp);
-        map.put("health", health);
-        //map.put("saturation",saturation);
-        map.put("money", money);
-        map.put("world", world);
-        map.put("x", x);
-        map.put("y", y);
-        map.put("z", z);
-        map.put("yaw", yaw);
-        map.put("pitch", pitch);
-
-        String serializedInventory;
-        String serializedEnderChest;
-        String serializedArmor;
+
+        // the checksum covers all content columns, unchanged ones are taken from the last save
+        if(map.containsKey("inventory") || map.containsKey("enderchest") || map.containsKey("armor")){
+            HashMap<String, Object> content = new HashMap<>();
+            for (SyncModule module : new SyncModule[]{SyncModule.INVENTORY, SyncModule.ENDER_CHEST, SyncModule.ARMOR}) {
+                Map<String, Object> columns = snapshot.getModuleColumns(module);
+                if(columns != null) content.putAll(columns);
+            }
+            map.put(DataChecksum.COLUMN, DataChecksum.compute(content));
+        }
+
+        snapshot.put(Main.TABLE_NAME, map);
+    }
+
+    private void collectColumns(PlayerSnapshot snapshot, HashMap<String, Object> map, SyncModule module, Map<String, Object> columns){
+        if(!snapshot.isDirty(module, columns)) return;
+        map.putAll(columns);
+        snapshot.track(module, columns, columns);
+    }
+
+    /**
+     * Items are compared with a copy of the last saved ones before serializing, unchanged containers are never serialized again.
+     */
+    private void collectItems(Player player, PlayerSnapshot snapshot, HashMap<String, Object> map, SyncModule module, String column, ItemStack[] items){
+        if(!snapshot.isDirty(module, Arrays.asList(items))) return;
+
+        Object serialized;
         try {
             if(Main.nbtSerializer == null){
                 throw new NBTSerializationException("nbtserializer not loaded on serialize", null);
             }
-            serializedInventory = Main.nbtSerializer.serialize(player.getInventory().getContents());
-            serializedEnderChest = Main.nbtSerializer.serialize(player.getEnderChest().getContents());
-            serializedArmor = Main.nbtSerializer.serialize(new ItemStack[]{
-                    player.getInventory().getBoots(),
-                    player.getInventory().getLeggings(),
-                    player.getInventory().getChestplate(),
-                    player.getInventory().getHelmet()
-            });
+            serialized = Main.nbtSerializer.serialize(items, Main.serializationType);
+        } catch (Exception e) {
+            Main.getInstance().getLogger().warning("Failed to serialize player " + column + " for " + player.getName() + ": " + e.getMessage());
+            throw new RuntimeException(e);
+        }
 
-            if(serializedInventory == null || serializedInventory.isEmpty()) {
-                serializedInventory = "null";
-                if(Main.DEBUG) System.out.println("Warning: Inventory serialization resulted in empty/null");
-            }
-            if(serializedEnderChest == null || serializedEnderChest.isEmpty()) {
-                serializedEnderChest = "null";
-                if(Main.DEBUG) System.out.println("Warning: EnderChest serialization resulted in empty/null");
-            }
-            if(serializedArmor == null || serializedArmor.isEmpty()) {
-                serializedArmor = "null";
-                if(Main.DEBUG) System.out.println("Warning: Armor serialization resulted in empty/null");
+        if(NBTSerializer.isAbsent(serialized)) {
+            serialized = "null";
+            if(Main.DEBUG) System.out.println("Warning: " + column + " serialization resulted in empty/null");
+        }
+        if(Main.DEBUG){
+            System.out.println(column + ": " + (serialized instanceof byte[] bytes ? bytes.length + " bytes" : serialized));
+            ItemFragmentCache itemCache = Main.nbtSerializer.getItemCache();
+            if(itemCache != null){
+                System.out.println("Item cache: " + itemCache.size() + " items, hit rate " + Math.round(itemCache.getHitRate() * 100) + "%");
             }
+        }
 
-            if(Main.DEBUG){
-                System.out.println("Inv: "+serializedInventory);
-                System.out.println("EnderChest: "+serializedEnderChest);
-                System.out.println("Armor: "+serializedArmor);
-            }
+        map.put(column, serialized);
+        snapshot.track(module, copyItems(items), Map.of(column, serialized));
+    }
+
+    private boolean useItemSlots(){
+        return Main.itemSlotStorage && Main.nbtSerializer != null && Main.nbtSerializer.supportsSingleItems();
+    }
+
+    /**
+     * Slot storage: only slots whose encoded bytes differ from the last save are written,
+     * the item column of the main row refers to the slot table.
+     */
+    private void collectSlots(Player player, PlayerSnapshot snapshot, HashMap<String, Object> map, HashMap<String, Object> slotChanges, SyncModule module, String column, ItemStack[] items){
+        if(!snapshot.isDirty(module, Arrays.asList(items))) return;
+
+        Map<String, Object> slots;
+        try {
+            slots = ItemSlotStore.encode(items);
         } catch (Exception e) {
-            Main.getInstance().getLogger().warning("Failed to serialize player inventory for " + player.getName() + ": " + e.getMessage());
+            Main.getInstance().getLogger().warning("Failed to serialize player " + column + " for " + player.getName() + ": " + e.getMessage());
             throw new RuntimeException(e);
         }
+        ItemSlotStore.putChanges(slotChanges, column, snapshot.getModuleColumns(module), slots);
+        if(Main.DEBUG) System.out.println(column + ": " + slotChanges.keySet().stream().filter(key -> key.startsWith(column + ":")).count() + " changed slots");
+
+        byte[] reference = NBTSerializer.slotTableReference();
+        map.put(column, reference);
+        HashMap<String, Object> tracked = new HashMap<>(slots);
+        tracked.put(column, reference);
+        snapshot.track(module, copyItems(items), tracked);
+    }
 
-        map.put("inventory", serializedInventory);
-        map.put("enderchest", serializedEnderChest);
-        map.put("armor", serializedArmor);
+    /**
+     * The live stacks keep changing, the tracker compares against copies.
+     */
+    private static List<ItemStack> copyItems(ItemStack[] items){
+        ItemStack[] copy = new ItemStack[items.length];
+        for (int i = 0; i < items.length; i++) {
+            copy[i] = items[i] == null ? null : items[i].clone();
+        }
+        return Arrays.asList(copy);
+    }
+
+    public PlayerSnapshot createSnapshot(Player player){
+        PlayerSnapshot snapshot = new PlayerSnapshot(player.getUniqueId(), player.getName(), this.dirtyTracker);
+        this.collectMainRow(player, snapshot, this.useItemSlots());
 
-        return map;
+        for (SyncDataManager module : this.getSyncDataManagers()) {
+            module.collect(player, snapshot);
+        }
+        return snapshot;
+    }
+
+    private List<SyncDataManager> getSyncDataManagers(){
+        return List.of(Main.effectDataManager, Main.advancementDataManager, Main.statsDataManager,
+                Main.hotbarSlotSelectionDataManager, Main.saturationDataManager);
     }
     
-    public void savePlayerData(Player player, boolean async){
+    public void savePlayerData(Player player){
         UUID uuid = player.getUniqueId();
-        ReentrantLock lock = getPlayerLock(uuid);
+        if(this.pendingApplies.contains(uuid)){
+            // the player left before the loaded data was applied, the database still holds the right data
+            if(Main.DEBUG) System.out.println("Skipping save, player data was not applied yet. Player: "+player.getName());
+            return;
+        }
+        Semaphore lock = lockPlayer(uuid);
         
-        lock.lock();
         try {
-            if(!this.hasData(player) && Main.config.getBoolean("settings.no-entry-protection")){ 
+            if(Main.config.getBoolean("settings.no-entry-protection") && !this.isKnownPlayer(player)){ 
                 return; 
             }
             
+            if(!this.groupCommitWriter.awaitPending(uuid)){
+                // a direct write could be overtaken by the pending save, the writer keeps the newer one of both
+                PlayerSnapshot snapshot = this.createSnapshot(player);
+                if(!snapshot.isEmpty()) this.queuePlayerSave(player, snapshot, true);
+                return;
+            }
             this.savePlayerDataWithRetry(player, 3);
-            
-            Main.effectDataManager.savePlayer(player, async);
-            Main.advancementDataManager.savePlayer(player, async);
-            Main.statsDataManager.savePlayer(player, async);
-            Main.hotbarSlotSelectionDataManager.savePlayer(player, async);
-            Main.saturationDataManager.savePlayer(player, async);
         } finally {
-            lock.unlock();
-            if (!lock.hasQueuedThreads() && !lock.isLocked()) {
-                playerLocks.remove(uuid);
-            }
+            unlockPlayer(uuid, lock);
         }
     }
     
     private void savePlayerDataWithRetry(Player player, int maxRetries) {
         for (int attempt = 1; attempt <= maxRetries; attempt++) {
             try {
-                HashMap<String, Object> data = this.getCurrentData(player);
+                PlayerSnapshot snapshot = this.createSnapshot(player);
+                if(snapshot.isEmpty()){
+                    if(Main.DEBUG) System.out.println("Player data unchanged, nothing to save. Player: "+player.getName());
+                    return;
+                }
+                if(this.isJournaled(player.getUniqueId())){
+                    // older saves are still journaled, this one has to be replayed after them
+                    if(this.journalSnapshot(snapshot)){
+                        this.replayJournal();
+                        return;
+                    }
+                    // the journal is full, writing now would be rolled back by the older records once they are replayed
+                    if(!this.journal.replay(this.playerDataWriter) && this.journal.contains(player.getUniqueId())){
+                        throw new SQLException("Save journal is full and older saves of " + player.getName() + " are not written yet");
+                    }
+                }
+                HashMap<String, Object> data = snapshot.getDataMap(Main.TABLE_NAME);
                 if(Main.DEBUG){
                     System.out.println("Attempting to save player data. Player: "+player.getName() + " (Attempt " + attempt + "/" + maxRetries + ")");
                     logDataSizes(player, data);
                 }
                 
                 verifyDataIntegrity(player, data);
-                this.mySqlManager.setOrUpdateEntry(Main.TABLE_NAME, Map.of("uuid", player.getUniqueId().toString()), data);
-                
-                verifyDataWasSaved(player, data);
+                SaveVerificationMode verificationMode = Main.modulesManager.saveVerificationMode;
+                this.playerDataWriter.write(List.of(snapshot), verificationMode);
+
+                if(verificationMode == SaveVerificationMode.FULL){
+                    verifyDataWasSaved(player, data);
+                }
+                this.dirtyTracker.markPersisted(snapshot);
                 
                 if(Main.DEBUG && attempt > 1) {
                     System.out.println("Successfully saved player data on retry: " + player.getName());
                 }
                 return;
                 
-            } catch (MySqlError e) {
+            } catch (LeaseLostException e) {
+                // another server took the player over, retrying would overwrite its data
+                new MySqlErrorHandler().savePlayerData(player, this.getCurrentData(player));
+                throw new RuntimeException(e);
+            } catch (MySqlError | SQLException e) {
                 if (attempt == maxRetries) {
+                    if(!(e instanceof MySqlError) && this.journalSnapshot(this.createSnapshot(player))){
+                        Main.getInstance().getLogger().warning("Could not save player data of " + player.getName() + ", kept in the save journal: " + e.getMessage());
+                        return;
+                    }
                     new MySqlErrorHandler().savePlayerData(player, this.getCurrentData(player));
                     throw new RuntimeException("Failed to save player data after " + maxRetries + " attempts", e);
                 }
@@ -198,49 +466,44 @@ public class MySqlDataManager {
     }
     
     private void logDataSizes(Player player, HashMap<String, Object> data) {
-        String inv = String.valueOf(data.get("inventory"));
-        String ender = String.valueOf(data.get("enderchest"));
-        String armor = String.valueOf(data.get("armor"));
-        
         System.out.println("[DATA SIZE] " + player.getName() + 
-            " - Inv: " + (inv == null ? 0 : inv.length()) + " bytes, " +
-            "EnderChest: " + (ender == null ? 0 : ender.length()) + " bytes, " +
-            "Armor: " + (armor == null ? 0 : armor.length()) + " bytes");
+            " - Inv: " + NBTSerializer.sizeOf(data.get("inventory")) + " bytes, " +
+            "EnderChest: " + NBTSerializer.sizeOf(data.get("enderchest")) + " bytes, " +
+            "Armor: " + NBTSerializer.sizeOf(data.get("armor")) + " bytes");
     }
     
     private void verifyDataIntegrity(Player player, HashMap<String, Object> data) {
         final long MAX_FIELD_SIZE = 16777215;
         
-        String inv = String.valueOf(data.get("inventory"));
-        String ender = String.valueOf(data.get("enderchest"));
-        String armor = String.valueOf(data.get("armor"));
+        int inv = NBTSerializer.sizeOf(data.get("inventory"));
+        int ender = NBTSerializer.sizeOf(data.get("enderchest"));
+        int armor = NBTSerializer.sizeOf(data.get("armor"));
         
-        if(inv.length() > MAX_FIELD_SIZE) {
-            Main.getInstance().getLogger().warning("Inventory data for " + player.getName() + " exceeds max size: " + inv.length() + " bytes");
+        if(inv > MAX_FIELD_SIZE) {
+            Main.getInstance().getLogger().warning("Inventory data for " + player.getName() + " exceeds max size: " + inv + " bytes");
         }
-        if(ender.length() > MAX_FIELD_SIZE) {
-            Main.getInstance().getLogger().warning("EnderChest data for " + player.getName() + " exceeds max size: " + ender.length() + " bytes");
+        if(ender > MAX_FIELD_SIZE) {
+            Main.getInstance().getLogger().warning("EnderChest data for " + player.getName() + " exceeds max size: " + ender + " bytes");
         }
-        if(armor.length() > MAX_FIELD_SIZE) {
-            Main.getInstance().getLogger().warning("Armor data for " + player.getName() + " exceeds max size: " + armor.length() + " bytes");
+        if(armor > MAX_FIELD_SIZE) {
+            Main.getInstance().getLogger().warning("Armor data for " + player.getName() + " exceeds max size: " + armor + " bytes");
         }
     }
     
-    private void verifyDataWasSaved(Player player, HashMap<String, Object> data) throws MySqlError {
+    private void verifyDataWasSaved(Player player, HashMap<String, Object> data) throws MySqlError, SQLException {
         try {
-            Map<String, Object> savedData = this.mySqlManager.getEntry(Main.TABLE_NAME, 
-                Map.of("uuid", player.getUniqueId().toString()));
+            Map<String, Object> savedData = this.connectionHandler.getEntry(Main.TABLE_NAME, player.getUniqueId());
             
             if(savedData == null || savedData.isEmpty()) {
                 throw new MySqlError("Saved data is empty or null");
             }
             
-            String savedInv = String.valueOf(savedData.get("inventory"));
-            String expectedInv = String.valueOf(data.get("inventory"));
+            int savedInv = NBTSerializer.sizeOf(savedData.get("inventory"));
+            int expectedInv = NBTSerializer.sizeOf(data.get("inventory"));
             
-            if(savedInv.length() < expectedInv.length() && !expectedInv.equals("null")) {
+            if(savedInv < expectedInv && !NBTSerializer.isAbsent(data.get("inventory"))) {
                 Main.getInstance().getLogger().warning("WARNING: Inventory data was truncated for " + player.getName() + 
-                    " Expected: " + expectedInv.length() + " bytes, Got: " + savedInv.length() + " bytes");
+                    " Expected: " + expectedInv + " bytes, Got: " + savedInv + " bytes");
                 throw new MySqlError("Data truncation detected - inventory");
             }
             
@@ -256,190 +519,484 @@ public class MySqlDataManager {
     }
 
 
-    public HashMap<String, Object> getPlayerDataFromDB(Player player) throws NoPlayerDataException {
-        if(!hasData(player)){
-            throw new NoPlayerDataException(player);
+    /**
+     * Loads the main row and all enabled module tables of a player in one query and decodes them,
+     * never call this on the main thread.
+     */
+    public PreloadedPlayerData loadPlayerData(UUID uuid) throws SQLException {
+        long sequence = PlayerSnapshot.currentSequence();
+        if(!this.groupCommitWriter.awaitPending(uuid)){
+            throw new SQLException("The last save of " + uuid + " is not written yet, its data can not be loaded");
         }
+        if(this.isJournaled(uuid) && !this.journal.replay(this.playerDataWriter) && this.journal.contains(uuid)){
+            throw new SQLException("Player data of " + uuid + " is still in the save journal, the database is not writable");
+        }
+        // waits only while another server still owns the player, i.e. its quit save is not written yet
+        this.playerLeases.acquire(uuid);
+
+        List<SyncDataManager> enabledModules = this.getSyncDataManagers().stream().filter(SyncDataManager::isEnabled).toList();
+        HashMap<String, HashMap<String, Object>> rows = this.playerDataLoader.load(uuid, enabledModules);
+
+        PreloadedPlayerData data = new PreloadedPlayerData(uuid, rows.get(Main.TABLE_NAME), sequence);
+        if(!data.exists()) return data;
+
+        ModulesManager modules = Main.modulesManager;
+        HashMap<String, Object> row = data.getMainRow();
+        // read regardless of slot-storage, rows may have been written by a server using it
+        List<String> slotContainers = new ArrayList<>();
+        if(modules.syncInventory && NBTSerializer.isSlotTableReference(row.get(ItemSlotStore.INVENTORY))) slotContainers.add(ItemSlotStore.INVENTORY);
+        if(modules.syncEnderChest && NBTSerializer.isSlotTableReference(row.get(ItemSlotStore.ENDER_CHEST))) slotContainers.add(ItemSlotStore.ENDER_CHEST);
+        Map<String, ItemStack[]> slotItems = slotContainers.isEmpty() ? Map.of()
+                : this.connectionHandler.withConnection(connection -> ItemSlotStore.load(connection, uuid, slotContainers));
+
+        if(modules.syncInventory) data.put(SyncModule.INVENTORY, slotItems.containsKey(ItemSlotStore.INVENTORY)
+                ? slotItems.get(ItemSlotStore.INVENTORY) : this.decodeItems(uuid, "inventory", row.get("inventory")));
+        if(modules.syncEnderChest) data.put(SyncModule.ENDER_CHEST, slotItems.containsKey(ItemSlotStore.ENDER_CHEST)
+                ? slotItems.get(ItemSlotStore.ENDER_CHEST) : this.decodeItems(uuid, "enderchest", row.get("enderchest")));
+        if(modules.syncArmorSlots) data.put(SyncModule.ARMOR, this.decodeItems(uuid, "armor", row.get("armor")));
+
+        for (SyncDataManager module : enabledModules) {
+            module.load(rows.get(module.getTable()), data);
+        }
+        return data;
+    }
 
+    private ItemStack[] decodeItems(UUID uuid, String column, Object stored){
+        if(NBTSerializer.isAbsent(stored)) return null;
         try {
-            return (HashMap<String, Object>) this.mySqlManager.getEntry(Main.TABLE_NAME, Map.of("uuid", player.getUniqueId().toString()));
-        } catch (MySqlError e) {
+            if(Main.nbtSerializer == null){
+                throw new NBTSerializationException("nbtserializer not loaded", null);
+            }
+            ItemStack[] items = Main.nbtSerializer.deserialize(stored);
+            if(items == null || items.length == 0) {
+                Main.getInstance().getLogger().warning("Failed to deserialize " + column + " for " + uuid + ": items array is empty");
+                return null;
+            }
+            return items;
+        } catch (Exception e) {
+            Main.getInstance().getLogger().warning("Failed to deserialize " + column + " for " + uuid + ": " + e.getMessage());
+            if(Main.DEBUG) e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Loads a player's data while the login is still pending, so the join only has to apply it.
+     * Skipped on a relog while the old session is still online or its quit save is not written yet,
+     * the join loads the data after that save instead.
+     */
+    public void prefetch(UUID uuid){
+        long now = System.currentTimeMillis();
+        this.preloaded.values().removeIf(data -> now - data.getLoadedAt() > PRELOAD_EXPIRY_MILLIS);
+        if(Bukkit.getPlayer(uuid) != null || this.groupCommitWriter.hasPending(uuid)){
+            if(Main.DEBUG) System.out.println("Player is still online or saving, not prefetching: " + uuid);
+            return;
+        }
+        try {
+            this.preloaded.put(uuid, this.loadPlayerData(uuid));
+        } catch (SQLException | RuntimeException e) {
+            Main.getInstance().getLogger().warning("Could not prefetch player data of " + uuid + ", loading it on join: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits on the login thread for a save of the player still being written, e.g. the quit save of a quick relog.
+     * @return false if it is not written in time, the player has to be turned away
+     */
+    public boolean awaitPendingSave(UUID uuid){
+        return this.groupCommitWriter.awaitPending(uuid);
+    }
+
+    public boolean isPreloaded(UUID uuid){
+        return this.isUsable(this.preloaded.get(uuid));
+    }
+
+    /**
+     * @return the prefetched data of the player, null if there is none or it is outdated
+     */
+    private PreloadedPlayerData takePreloaded(UUID uuid){
+        PreloadedPlayerData data = this.preloaded.remove(uuid);
+        return this.isUsable(data) ? data : null;
+    }
+
+    /**
+     * Prefetched data is outdated once it expired or a quit save of the player was submitted after the load started.
+     */
+    private boolean isUsable(PreloadedPlayerData data){
+        if(data == null || System.currentTimeMillis() - data.getLoadedAt() > PRELOAD_EXPIRY_MILLIS) return false;
+        if(this.groupCommitWriter.getFinalSequence(data.getUuid()) > data.getSequence()){
+            if(Main.DEBUG) System.out.println("Discarding prefetched data older than the last quit save: " + data.getUuid());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moving average of a group write, drives the adaptive autosave interval.
+     */
+    public double getSaveLatencyMillis(){ return this.groupCommitWriter.getLatencyMillis(); }
+
+    public int getPendingSaveCount(){ return this.groupCommitWriter.getPendingCount(); }
+
+    public boolean checkDatabaseConnection(){
+        try {
+            return this.connectionHandler.withConnection(connection -> connection.isValid(2));
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Applies prefetched data right away if the calling thread owns the player, otherwise loads it first
+     * and hands it to the player's thread. The player stays locked until the apply has run.
+     * The player's thread never waits: if the player is locked or nothing usable was prefetched, the load moves to the database executor.
+     * @return completes with false if the player has no data yet (new player)
+     */
+    public CompletableFuture<Boolean> applyDataToPlayer(Player player){
+        UUID uuid = player.getUniqueId();
+        if(this.isPlayerThread(player)){
+            Semaphore lock = tryLockPlayer(uuid);
+            PreloadedPlayerData data = lock == null ? null : this.takePreloaded(uuid);
+            if(data == null){
+                if(lock != null) unlockPlayer(uuid, lock);
+                return CompletableFuture.supplyAsync(() -> this.applyDataToPlayer(player), this.connectionHandler.getDatabaseExecutor())
+                        .thenCompose(applied -> applied);
+            }
+            return this.applyData(player, lock, data);
+        }
+
+        Semaphore lock = lockPlayer(uuid);
+        PreloadedPlayerData data;
+        try {
+            data = this.takePreloaded(uuid);
+            if(data == null) data = this.loadPlayerData(uuid);
+        } catch (SQLException e) {
+            unlockPlayer(uuid, lock);
             new MySqlErrorHandler().getPlayerData(player);
             throw new RuntimeException(e);
+        } catch (RuntimeException e) {
+            unlockPlayer(uuid, lock);
+            throw e;
         }
+        return this.applyData(player, lock, data);
     }
 
-    public boolean checkDatabaseConnection(){ return Main.mySqlConnectionHandler.getMySQL().isConnectionAlive(); }
-
-    public void applyDataToPlayer(Player player){
+    /**
+     * Takes over the held player lock and releases it once the apply has run.
+     */
+    private CompletableFuture<Boolean> applyData(Player player, Semaphore lock, PreloadedPlayerData data){
         UUID uuid = player.getUniqueId();
-        ReentrantLock lock = getPlayerLock(uuid);
-        
-        lock.lock();
+        CompletableFuture<Boolean> applied;
         try {
             if(Main.DEBUG){
                 System.out.println("attempting to applyDataToPlayer player: "+player.getName());
             }
 
-            HashMap<String, Object> data;
-            try {
-                data = this.getPlayerDataFromDB(player);
-            } catch (NoPlayerDataException e) {
-                throw new RuntimeException(e);
+            this.dirtyTracker.start(uuid);
+            this.knownPlayers.put(uuid, data.exists());
+            if(!data.exists()){
+                unlockPlayer(uuid, lock);
+                return CompletableFuture.completedFuture(false);
             }
 
-            Scheduler.run(() -> {
-            ModulesManager modules = Main.modulesManager;
-
-            if(modules.syncInventory){
-                try {
-                    if(Main.nbtSerializer == null){
-                        throw new NBTSerializationException("nbtserializer not loaded", null);
-                    }
-                    String invData = String.valueOf(data.get("inventory"));
-                    if(invData != null && !invData.equals("null")) {
-                        ItemStack[] items = Main.nbtSerializer.deserialize(invData);
-                        if(items != null && items.length > 0) {
-                            player.getInventory().setContents(items);
-                        } else {
-                            Main.getInstance().getLogger().warning("Failed to deserialize inventory for " + player.getName() + ": items array is empty");
-                        }
-                    }
-                } catch (Exception e) {
-                    Main.getInstance().getLogger().warning("Failed to apply inventory for " + player.getName() + ": " + e.getMessage());
-                    if(Main.DEBUG) e.printStackTrace();
-                }
+            this.pendingApplies.add(uuid);
+            // the player stays pending until modules spread over several ticks are done as well
+            applied = this.runForPlayer(player, () -> this.applyLoadedData(player, data))
+                    .thenCompose(modules -> modules)
+                    .orTimeout(APPLY_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .thenApply(ignored -> true);
+        } catch (RuntimeException e) {
+            unlockPlayer(uuid, lock);
+            throw e;
+        }
 
+        applied.whenComplete((ignored, error) -> {
+            this.pendingApplies.remove(uuid);
+            unlockPlayer(uuid, lock);
+            if(error != null){
+                Main.getInstance().getLogger().warning("Failed to apply player data for " + player.getName() + ": " + error.getMessage());
             }
-            if(modules.syncEnderChest){
-                try {
-                    if(Main.nbtSerializer == null){
-                        throw new NBTSerializationException("nbtserializer not loaded", null);
-                    }
-                    String chestData = String.valueOf(data.get("enderchest"));
-                    if(chestData != null && !chestData.equals("null")) {
-                        ItemStack[] items = Main.nbtSerializer.deserialize(chestData);
-                        if(items != null && items.length > 0) {
-                            player.getEnderChest().setContents(items);
-                        } else {
-                            Main.getInstance().getLogger().warning("Failed to deserialize enderchest for " + player.getName() + ": items array is empty");
-                        }
-                    }
-                } catch (Exception e) {
-                    Main.getInstance().getLogger().warning("Failed to apply enderchest for " + player.getName() + ": " + e.getMessage());
-                    if(Main.DEBUG) e.printStackTrace();
+        });
+        return applied;
+    }
+
+    /**
+     * @return completes once the modules applied over several ticks are done
+     */
+    private CompletableFuture<Void> applyLoadedData(Player player, PreloadedPlayerData loaded){
+        ModulesManager modules = Main.modulesManager;
+        HashMap<String, Object> data = loaded.getMainRow();
+
+        ItemStack[] inventoryItems = loaded.get(SyncModule.INVENTORY);
+        if(modules.syncInventory && inventoryItems != null){
+            player.getInventory().setContents(inventoryItems);
+        }
+        ItemStack[] enderChestItems = loaded.get(SyncModule.ENDER_CHEST);
+        if(modules.syncEnderChest && enderChestItems != null){
+            player.getEnderChest().setContents(enderChestItems);
+        }
+        ItemStack[] armorItems = loaded.get(SyncModule.ARMOR);
+        if(modules.syncArmorSlots && armorItems != null){
+            player.getInventory().setArmorContents(armorItems);
+        }
+        if(modules.syncGamemode){
+            player.setGameMode(GameMode.valueOf(String.valueOf(data.get("gamemode"))));
+        }
+        if(modules.syncHealth){
+            double healthToSet = (Double) data.get("health");
+            double maxHealth = player.getMaxHealth();
+            if(healthToSet > maxHealth){
+                player.setHealth(maxHealth);
+                if(Main.DEBUG){
+                    System.out.println("Player " + player.getName() + " health clamped from " + healthToSet + " to max health " + maxHealth);
                 }
+            } else {
+                player.setHealth(healthToSet);
             }
-            if(modules.syncArmorSlots){
+        }
+        if(modules.syncVaultEconomy){
+            Main.vaultManager.setBalance(player, (Double) data.get("money"));
+        }
+        if(modules.syncExp){
+            player.setLevel((Integer) data.get("exp_level"));
+            player.setExp((Float) data.get("exp"));
+        }
+        if(modules.syncLocation){
+            World world = Bukkit.getWorld((String) data.get("world"));
+            Location location = new Location(world, (Double) data.get("x"), (Double) data.get("y"), (Double) data.get("z"), (Float) data.get("yaw"), (Float) data.get("pitch"));
+
+            if (Minecraft.isFolia()){
                 try {
-                    if(Main.nbtSerializer == null){
-                        throw new NBTSerializationException("nbtserializer not loaded", null);
-                    }
-                    String armorData = String.valueOf(data.get("armor"));
-                    if(armorData != null && !armorData.equals("null")) {
-                        ItemStack[] items = Main.nbtSerializer.deserialize(armorData);
-                        if(items != null && items.length > 0) {
-                            player.getInventory().setArmorContents(items);
-                        } else {
-                            Main.getInstance().getLogger().warning("Failed to deserialize armor for " + player.getName() + ": items array is empty");
+                    Method teleportAsync = player.getClass().getMethod("teleportAsync", Location.class);
+                    CompletableFuture<Boolean> future = (CompletableFuture<Boolean>) teleportAsync.invoke(player, location);
+
+                    future.thenAccept(success -> {
+                        if (!success) {
+                            Bukkit.getLogger().warning("Failed to teleport player! Player: " + player.getName());
                         }
-                    }
-                } catch (Exception e) {
-                    Main.getInstance().getLogger().warning("Failed to apply armor for " + player.getName() + ": " + e.getMessage());
-                    if(Main.DEBUG) e.printStackTrace();
+                    });
+                } catch (NoSuchMethodException e) {} catch (Exception e) {
+                    e.printStackTrace();
                 }
+            }else {
+                player.teleport(location);
             }
-            if(modules.syncGamemode){
-                player.setGameMode(GameMode.valueOf(String.valueOf(data.get("gamemode"))));
+        }
+
+        List<SyncDataManager> syncModules = this.getSyncDataManagers();
+        CompletableFuture<?>[] applied = new CompletableFuture<?>[syncModules.size()];
+        for (int i = 0; i < applied.length; i++) {
+            applied[i] = syncModules.get(i).apply(player, loaded);
+        }
+        return CompletableFuture.allOf(applied);
+    }
+
+    /**
+     * Runs the task directly if the current thread owns the player, otherwise schedules it there.
+     * @return completes with the task's result once it has run
+     */
+    private <T> CompletableFuture<T> runForPlayer(Player player, Supplier<T> task){
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable completing = () -> {
+            try {
+                future.complete(task.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
             }
-            if(modules.syncHealth){
-                double healthToSet = (Double) data.get("health");
-                double maxHealth = player.getMaxHealth();
-                if(healthToSet > maxHealth){
-                    player.setHealth(maxHealth);
-                    if(Main.DEBUG){
-                        System.out.println("Player " + player.getName() + " health clamped from " + healthToSet + " to max health " + maxHealth);
-                    }
-                } else {
-                    player.setHealth(healthToSet);
-                }
+        };
+
+        if(this.isPlayerThread(player)){
+            completing.run();
+        }else if(Minecraft.isFolia()){
+            try {
+                Scheduler.runRegionalScheduler(completing, Main.getInstance(), player.getLocation());
+            } catch (SchedulerException e) {
+                future.completeExceptionally(e);
             }
-            if(modules.syncVaultEconomy){
-                Main.vaultManager.setBalance(player, (Double) data.get("money"));
+        }else {
+            Scheduler.run(completing, Main.getInstance());
+        }
+        return future;
+    }
+
+    /**
+     * The main thread, on Folia the thread of the player's region.
+     */
+    private boolean isPlayerThread(Player player){
+        return Minecraft.isFolia() ? Bukkit.isOwnedByCurrentRegion(player) : Bukkit.isPrimaryThread();
+    }
+
+    public void saveAllOnlinePlayers(){
+        for (Player player : Bukkit.getOnlinePlayers()){
+            this.savePlayerData(player);
+        }
+    }
+
+    /**
+     * Captures snapshots of all online players on their own threads, spread over ticks,
+     * and queues them for the group commit writer, the whole server is written in a few statements.
+     */
+    public void saveAllOnlinePlayersAsync(){
+        this.savePlayersAsync(List.copyOf(Bukkit.getOnlinePlayers()), true);
+    }
+
+    /**
+     * Same as {@link #saveAllOnlinePlayersAsync()} for a part of the online players, used by autosave.
+     * @param priority manual saves, captured and written before periodic ones
+     */
+    public void savePlayersAsync(Collection<? extends Player> players, boolean priority){
+        this.connectionHandler.getDatabaseExecutor().execute(() -> {
+            boolean noEntryProtection = Main.config.getBoolean("settings.no-entry-protection");
+            List<Player> saved = new ArrayList<>();
+            for (Player player : players){
+                if(!noEntryProtection || this.isKnownPlayer(player)) saved.add(player);
             }
-            if(modules.syncExp){
-                player.setLevel((Integer) data.get("exp_level"));
-                player.setExp((Float) data.get("exp"));
+            this.snapshotScheduler.captureAll(saved, priority, this::captureSnapshot,
+                    (player, snapshot) -> this.queuePlayerSave(player, snapshot, priority));
+        });
+    }
+
+    /**
+     * Saves a single player the way {@link #savePlayersAsync} does, used by manual sync and the first save of a new player.
+     * The snapshot is captured on the player's thread in the priority lane, only the write runs on the database executor.
+     * @return true once the save is written, false if nothing was saved
+     */
+    public CompletableFuture<Boolean> savePlayerDataAsync(Player player){
+        CompletableFuture<Boolean> saved = new CompletableFuture<>();
+        this.connectionHandler.getDatabaseExecutor().execute(() -> {
+            if(Main.config.getBoolean("settings.no-entry-protection") && !this.isKnownPlayer(player)){
+                saved.complete(false);
+                return;
             }
-            if(modules.syncLocation){
-                World world = Bukkit.getWorld((String) data.get("world"));
-                Location location = new Location(world, (Double) data.get("x"), (Double) data.get("y"), (Double) data.get("z"), (Float) data.get("yaw"), (Float) data.get("pitch"));
-
-                if (Minecraft.isFolia()){
-                    try {
-                        Scheduler.runRegionalScheduler(() -> {
-                            try {
-                                Method teleportAsync = player.getClass().getMethod("teleportAsync", Location.class);
-                                CompletableFuture<Boolean> future = (CompletableFuture<Boolean>) teleportAsync.invoke(player, location);
-
-                                future.thenAccept(success -> {
-                                    if (!success) {
-                                        Bukkit.getLogger().warning("Failed to teleport player! Player: " + player.getName());
-                                    }
-                                });
-                            } catch (NoSuchMethodException e) {} catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, Main.getInstance(), location);
-                    } catch (SchedulerException e) {
-                        throw new RuntimeException(e+ " Caused by trying to teleport the player async without running Folia");
+            this.snapshotScheduler.captureAll(List.of(player), true, captured -> {
+                // the player left before the loaded data was applied, the database still holds the right data
+                PlayerSnapshot snapshot = this.pendingApplies.contains(captured.getUniqueId()) ? null : this.captureSnapshot(captured);
+                if(snapshot == null) saved.complete(false);
+                return snapshot;
+            }, (captured, snapshot) -> this.queuePlayerSave(captured, snapshot, true).whenComplete((ignored, error) -> {
+                if(error == null) saved.complete(true);
+                else saved.completeExceptionally(error);
+            }));
+        });
+        return saved;
+    }
+
+    /**
+     * Runs on the player's thread, players busy with another load or save are left to that operation.
+     */
+    private PlayerSnapshot captureSnapshot(Player player){
+        UUID uuid = player.getUniqueId();
+        Semaphore lock = this.tryLockPlayer(uuid);
+        if(lock == null){
+            if(Main.DEBUG) System.out.println("Player is locked, skipping autosave snapshot. Player: " + player.getName());
+            return null;
+        }
+        try {
+            PlayerSnapshot snapshot = this.createSnapshot(player);
+            return snapshot.isEmpty() ? null : snapshot;
+        } catch (RuntimeException e) {
+            Main.getInstance().getLogger().warning("Could not collect player data for " + player.getName() + ": " + e.getMessage());
+            return null;
+        } finally {
+            unlockPlayer(uuid, lock);
+        }
+    }
+
+    private CompletableFuture<Void> queuePlayerSave(Player player, PlayerSnapshot snapshot, boolean priority){
+        UUID uuid = player.getUniqueId();
+        // left after the capture, the newer quit save must not be overwritten
+        if(!player.isOnline()) return CompletableFuture.failedFuture(new IllegalStateException(player.getName() + " left before the save was queued"));
+        verifyDataIntegrity(player, snapshot.getDataMap(Main.TABLE_NAME));
+
+        return this.groupCommitWriter.submit(snapshot, false, priority).whenComplete((ignored, error) -> {
+            HashMap<String, Object> data = snapshot.getDataMap(Main.TABLE_NAME);
+            if(error == null){
+                try {
+                    if(Main.modulesManager.saveVerificationMode == SaveVerificationMode.FULL && !this.isJournaled(uuid)){
+                        verifyDataWasSaved(player, data);
                     }
-                }else {
-                    player.teleport(location);
+                    this.dirtyTracker.markPersisted(snapshot);
+                    return;
+                } catch (MySqlError | SQLException e) {
+                    error = e;
                 }
             }
 
-        }, Main.getInstance());
+            if(player.isOnline()){
+                new MySqlErrorHandler().savePlayerData(player, data);
+            }else {
+                Main.getInstance().getLogger().severe("Failed to save player data of " + player.getName() + " (" + uuid + "): " + error.getMessage());
+            }
+        });
+    }
 
-        try {
-            Thread.sleep(100);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    /**
+     * Quit save: the snapshot is captured on the calling (player's) thread and written behind by the group commit writer.
+     * Loads of this player wait until the write finished, see {@link GroupCommitWriter#awaitPending(UUID)}.
+     */
+    public void savePlayerDataOnQuit(Player player){
+        UUID uuid = player.getUniqueId();
+        String name = player.getName();
+        DatabaseExecutor executor = this.connectionHandler.getDatabaseExecutor();
+        if(this.pendingApplies.contains(uuid)){
+            if(Main.DEBUG) System.out.println("Skipping quit save, player data was not applied yet. Player: "+name);
+            executor.execute(() -> this.playerLeases.release(uuid));
+            return;
         }
 
-        long timeout = System.currentTimeMillis() + 10000;
-        Main.effectDataManager.applyPlayer(player);
-        Main.advancementDataManager.applyPlayer(player);
-        Main.statsDataManager.applyPlayer(player);
-        Main.hotbarSlotSelectionDataManager.applyPlayer(player);
-        Main.saturationDataManager.applyPlayer(player);
-        
+        PlayerSnapshot snapshot;
         try {
-            Thread.sleep(500);
-        } catch (InterruptedException e) {
-            if(Main.DEBUG) {
-                System.out.println("Interrupted while waiting for sync managers: " + player.getName());
-            }
-            Thread.currentThread().interrupt();
+            // written even if nothing changed, the final save hands the player over to the next server
+            Main.progressTracker.requestRescan(uuid);
+            snapshot = this.createSnapshot(player).markFinal();
+        } catch (RuntimeException e) {
+            Main.getInstance().getLogger().severe("Could not collect player data of " + name + " on quit: " + e.getMessage());
+            executor.execute(() -> this.playerLeases.release(uuid));
+            return;
         }
-        
-        } finally {
-            lock.unlock();
-            if (!lock.hasQueuedThreads() && !lock.isLocked()) {
-                playerLocks.remove(uuid);
+        // read now, the session is cleared right after the quit
+        Boolean known = this.knownPlayers.get(uuid);
+        // pending from now on, a reconnect waits for this save even while the executor is busy
+        GroupCommitWriter.PendingSave save = this.groupCommitWriter.reserve(snapshot, true, true);
+
+        // the existence check may block, it runs on the database executor
+        executor.execute(() -> {
+            if(Main.config.getBoolean("settings.no-entry-protection") && !(known != null ? known : this.hasDataQuietly(uuid, name))){
+                this.groupCommitWriter.cancel(save);
+                this.playerLeases.release(uuid);
+                return;
             }
-        }
+            verifyDataIntegrity(player, snapshot.getDataMap(Main.TABLE_NAME));
+            this.groupCommitWriter.queue(save).whenComplete((ignored, error) -> {
+                if(error == null){
+                    this.dirtyTracker.markPersisted(snapshot);
+                    return;
+                }
+                HashMap<String, Object> data = snapshot.getDataMap(Main.TABLE_NAME);
+                String filename = uuid + " " + new SimpleDateFormat("yyyy-MM-dd HH-mm-ss").format(new Date());
+                Main.getInstance().getLogger().severe("Failed to save player data of " + name + " (" + uuid + ") on quit, data saved to plugins/MySqlPlayerBridge/" + filename + ": " + error.getMessage());
+                FileUtils.saveMapToFile(filename, data);
+                if(!(error instanceof LeaseLostException)){
+                    this.playerLeases.release(uuid);
+                }
+            });
+        });
     }
 
-    public void saveAllOnlinePlayers(){
-        for (Player player : Bukkit.getOnlinePlayers()){
-            this.savePlayerData(player, false);
-        }
+    private boolean isJournaled(UUID uuid){
+        return this.journal != null && this.journal.contains(uuid);
     }
 
-    public void saveAllOnlinePlayersAsync(){
-        for (Player player : Bukkit.getOnlinePlayers()){
-            Scheduler.runAsync(() -> { this.savePlayerData(player, true);}, Main.getInstance());
+    public void shutdown(){
+        this.groupCommitWriter.close();
+        if(this.replayJournal()){
+            this.playerLeases.releaseAll();
+        }else {
+            // the next server must not load data older than the journal, the leases run out instead
+            Main.getInstance().getLogger().warning(this.journal.size() + " bytes of player saves stay in the save journal until the next start");
         }
+        if(this.journal != null) this.journal.close();
     }
+
+    public GroupCommitWriter getGroupCommitWriter(){ return this.groupCommitWriter; }
 }
@@ -0,0 +1,82 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
+
+import de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.MySqlConnectionHandler;
+import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers.SyncDataManager;
+import de.lostesburger.mySqlPlayerBridge.Utils.UuidUtils;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Loads the main row and the rows of all enabled module tables with one LEFT JOIN query.
+ */
+public class PlayerDataLoader {
+    private final MySqlConnectionHandler connectionHandler;
+
+    public PlayerDataLoader(MySqlConnectionHandler connectionHandler){
+        this.connectionHandler = connectionHandler;
+    }
+
+    /**
+     * @return the rows keyed by table name, module tables without a row for the player are missing.
+     * Empty if the player has no main row.
+     */
+    public HashMap<String, HashMap<String, Object>> load(UUID uuid, List<SyncDataManager> modules) throws SQLException {
+        StringBuilder select = new StringBuilder("SELECT m.*");
+        StringBuilder from = new StringBuilder(" FROM `").append(Main.TABLE_NAME).append("` m");
+        for (int i = 0; i < modules.size(); i++) {
+            String alias = "t" + i;
+            select.append(", ").append(alias).append(".`uuid` IS NOT NULL AS `").append(alias).append("__present`");
+            for (String column : modules.get(i).getColumns()) {
+                select.append(", ").append(alias).append(".`").append(column).append("` AS `").append(alias).append("__").append(column).append('`');
+            }
+            from.append(" LEFT JOIN `").append(modules.get(i).getTable()).append("` ").append(alias)
+                    .append(" ON ").append(alias).append(".`uuid` = m.`uuid`");
+        }
+        String sql = select.append(from).append(" WHERE m.`uuid` = ?").toString();
+
+        return this.connectionHandler.withConnection(connection -> {
+            HashMap<String, HashMap<String, Object>> rows = new HashMap<>();
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setBytes(1, UuidUtils.toBytes(uuid));
+                try (ResultSet result = statement.executeQuery()) {
+                    if(!result.next()) return rows;
+
+                    HashMap<String, Object> main = new HashMap<>();
+                    HashMap<String, HashMap<String, Object>> moduleRows = new HashMap<>();
+                    ResultSetMetaData meta = result.getMetaData();
+                    for (int column = 1; column <= meta.getColumnCount(); column++) {
+                        String label = meta.getColumnLabel(column);
+                        int split = label.indexOf("__");
+                        if(split < 0){
+                            main.put(label, result.getObject(column));
+                            continue;
+                        }
+                        moduleRows.computeIfAbsent(label.substring(0, split), k -> new HashMap<>())
+                                .put(label.substring(split + 2), result.getObject(column));
+                    }
+                    rows.put(Main.TABLE_NAME, main);
+
+                    for (int i = 0; i < modules.size(); i++) {
+                        HashMap<String, Object> row = moduleRows.get("t" + i);
+                        if(row == null || !Boolean.TRUE.equals(this.toBoolean(row.remove("present")))) continue;
+                        rows.put(modules.get(i).getTable(), row);
+                    }
+                }
+            }
+            return rows;
+        });
+    }
+
+    private Boolean toBoolean(Object value){
+        if(value instanceof Boolean bool) return bool;
+        if(value instanceof Number number) return number.intValue() != 0;
+        return null;
+    }
+}
@@ -0,0 +1,193 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
+
+import de.lostesburger.mySqlPlayerBridge.Exceptions.LeaseLostException;
+import de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.MySqlConnectionHandler;
+import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Utils.UuidUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Writes complete player snapshots (main table and all module tables) in a single transaction.
+ * Rows of the same table are written with one multi-row statement.
+ */
+public class PlayerDataWriter {
+    // prepared statements are limited to 65535 placeholders
+    private static final int MAX_PLACEHOLDERS = 65535;
+
+    private final MySqlConnectionHandler connectionHandler;
+    private final PlayerLeases playerLeases;
+    private final Consumer<Set<UUID>> createdListener;
+
+    /**
+     * @param createdListener told after every commit which players got their main table row with it,
+     *                        for every write path (direct, group commit, journal replay)
+     */
+    public PlayerDataWriter(MySqlConnectionHandler connectionHandler, PlayerLeases playerLeases, Consumer<Set<UUID>> createdListener){
+        this.connectionHandler = connectionHandler;
+        this.playerLeases = playerLeases;
+        this.createdListener = createdListener;
+    }
+
+    /**
+     * Claims the rows first, the whole write fails with a {@link LeaseLostException} if another server owns one of them.
+     * Players whose row could not be claimed because it does not exist are new, their row is created by this write.
+     * Final snapshots release the row again in the same transaction.
+     */
+    public void write(List<PlayerSnapshot> snapshots, SaveVerificationMode verificationMode) throws SQLException {
+        if(snapshots.isEmpty()) return;
+
+        Set<UUID> created = this.connectionHandler.withConnection(connection -> {
+            Set<UUID> newPlayers = new HashSet<>();
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                List<UUID> players = snapshots.stream().map(PlayerSnapshot::getUuid).toList();
+                Set<UUID> newRows = this.playerLeases.claimForWrite(connection, players);
+
+                LinkedHashMap<String, List<Row>> tables = this.groupByTable(snapshots);
+                for (Map.Entry<String, List<Row>> table : tables.entrySet()) {
+                    this.writeTable(connection, table.getKey(), table.getValue());
+                }
+                ItemSlotStore.write(connection, snapshots);
+                if(!newRows.isEmpty()){
+                    this.playerLeases.claim(connection, List.copyOf(newRows));
+                    for (Row row : tables.getOrDefault(Main.TABLE_NAME, List.of())) {
+                        if(newRows.contains(row.snapshot.getUuid())) newPlayers.add(row.snapshot.getUuid());
+                    }
+                }
+                this.playerLeases.release(connection, snapshots.stream().filter(PlayerSnapshot::isFinal).map(PlayerSnapshot::getUuid).toList());
+                if(verificationMode == SaveVerificationMode.CHECKSUM && tables.containsKey(Main.TABLE_NAME)){
+                    this.verifyChecksums(connection, tables.get(Main.TABLE_NAME));
+                }
+                connection.commit();
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+            return newPlayers;
+        });
+        if(!created.isEmpty()) this.createdListener.accept(created);
+    }
+
+    private LinkedHashMap<String, List<Row>> groupByTable(List<PlayerSnapshot> snapshots){
+        LinkedHashMap<String, List<Row>> tables = new LinkedHashMap<>();
+        tables.put(Main.TABLE_NAME, new ArrayList<>());
+
+        for (PlayerSnapshot snapshot : snapshots) {
+            snapshot.getTables().forEach((table, columns) -> {
+                // slot changes are deletes and upserts of several rows, see ItemSlotStore
+                if(columns.isEmpty() || table.equals(Main.TABLE_NAME_ITEM_SLOTS)) return;
+                tables.computeIfAbsent(table, k -> new ArrayList<>()).add(new Row(snapshot, columns));
+            });
+        }
+        tables.values().removeIf(List::isEmpty);
+        return tables;
+    }
+
+    private void writeTable(Connection connection, String table, List<Row> rows) throws SQLException {
+        // rows of one table normally share their columns, but never rely on it for a multi-row statement
+        LinkedHashMap<List<String>, List<Row>> layouts = new LinkedHashMap<>();
+        for (Row row : rows) {
+            layouts.computeIfAbsent(new ArrayList<>(row.columns.keySet()), k -> new ArrayList<>()).add(row);
+        }
+
+        for (Map.Entry<List<String>, List<Row>> layout : layouts.entrySet()) {
+            this.upsert(connection, table, layout.getKey(), layout.getValue());
+        }
+    }
+
+    /**
+     * Multi-row INSERT ... ON DUPLICATE KEY UPDATE keyed on the uuid primary key.
+     */
+    private void upsert(Connection connection, String table, List<String> columns, List<Row> rows) throws SQLException {
+        int rowsPerStatement = Math.max(1, MAX_PLACEHOLDERS / (columns.size() + 1));
+        for (int from = 0; from < rows.size(); from += rowsPerStatement) {
+            List<Row> chunk = rows.subList(from, Math.min(rows.size(), from + rowsPerStatement));
+
+            try (PreparedStatement statement = connection.prepareStatement(this.upsertSql(table, columns, chunk.size()))) {
+                int index = 1;
+                for (Row row : chunk) {
+                    statement.setBytes(index++, UuidUtils.toBytes(row.snapshot.getUuid()));
+                    for (String column : columns) {
+                        statement.setObject(index++, row.columns.get(column));
+                    }
+                }
+
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    private String upsertSql(String table, List<String> columns, int rowCount){
+        StringBuilder sql = new StringBuilder("INSERT INTO `").append(table).append("` (`uuid`");
+        for (String column : columns) {
+            sql.append(", `").append(column).append('`');
+        }
+        sql.append(") VALUES ");
+        String tuple = "(?" + ", ?".repeat(columns.size()) + ")";
+        for (int i = 0; i < rowCount; i++) {
+            if(i > 0) sql.append(", ");
+            sql.append(tuple);
+        }
+        sql.append(" ON DUPLICATE KEY UPDATE ");
+        for (int i = 0; i < columns.size(); i++) {
+            if(i > 0) sql.append(", ");
+            sql.append('`').append(columns.get(i)).append("` = VALUES(`").append(columns.get(i)).append("`)");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Lets the database recompute the content checksum of the rows written in this transaction,
+     * so only two numbers per player travel back instead of the whole row.
+     */
+    private void verifyChecksums(Connection connection, List<Row> rows) throws SQLException {
+        HashMap<UUID, Long> expected = new HashMap<>();
+        for (Row row : rows) {
+            Object checksum = row.columns.get(DataChecksum.COLUMN);
+            if(checksum != null) expected.put(row.snapshot.getUuid(), ((Number) checksum).longValue());
+        }
+        if(expected.isEmpty()) return;
+
+        String sql = "SELECT `uuid`, `" + DataChecksum.COLUMN + "`, " + DataChecksum.sqlExpression() + " AS `stored_checksum` FROM `"
+                + Main.TABLE_NAME + "` WHERE `uuid` IN (?" + ", ?".repeat(expected.size() - 1) + ")";
+
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int index = 1;
+            for (UUID uuid : expected.keySet()) {
+                statement.setBytes(index++, UuidUtils.toBytes(uuid));
+            }
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    UUID uuid = UuidUtils.fromBytes(result.getBytes("uuid"));
+                    Long checksum = expected.remove(uuid);
+                    if(checksum == null) continue;
+                    if(result.getLong(DataChecksum.COLUMN) != checksum || result.getLong("stored_checksum") != checksum){
+                        throw new SQLException("Checksum mismatch after saving player data: " + uuid);
+                    }
+                }
+            }
+        }
+
+        if(!expected.isEmpty()){
+            throw new SQLException("Saved player data could not be acknowledged: " + expected.keySet());
+        }
+    }
+
+    private record Row(PlayerSnapshot snapshot, Map<String, Object> columns) {}
+}
@@ -0,0 +1,201 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
+
+import de.lostesburger.mySqlPlayerBridge.Exceptions.LeaseLostException;
+import de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.MySqlConnectionHandler;
+import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Utils.UuidUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Cross-server handoff of player data.
+ * A server owns the row of a player from loading until its quit save is written: lease_owner holds its server id,
+ * lease_until when the ownership expires (database time, renewed while the server runs).
+ * Every write claims the row first and increments data_version, rows owned by another server are never written.
+ * A joining server only waits while another server still owns the row, which means its save is pending.
+ */
+public class PlayerLeases {
+    public static final String VERSION_COLUMN = "data_version";
+    public static final String OWNER_COLUMN = "lease_owner";
+    public static final String UNTIL_COLUMN = "lease_until";
+    private static final long POLL_MILLIS = 250;
+
+    private final MySqlConnectionHandler connectionHandler;
+    private final String serverId;
+    private final int leaseSeconds;
+    // leases held by this server
+    private final Set<UUID> owned = ConcurrentHashMap.newKeySet();
+
+    public PlayerLeases(MySqlConnectionHandler connectionHandler){
+        this.connectionHandler = connectionHandler;
+        String configured = Main.config.getString("settings.server-id", "");
+        this.serverId = configured == null || configured.isBlank() ? UUID.randomUUID().toString() : configured;
+        this.leaseSeconds = Math.max(10, Main.config.getInt("settings.lease-seconds", 30));
+    }
+
+    /**
+     * Takes over the row of a player before loading it, waits while another server owns it.
+     * Players without a row need no lease, it is claimed with their first save.
+     */
+    public void acquire(UUID uuid) throws SQLException {
+        long deadline = System.currentTimeMillis() + (this.leaseSeconds + 5) * 1000L;
+        boolean waited = false;
+        while (true) {
+            boolean claimed = this.connectionHandler.withConnection(connection -> this.claim(connection, List.of(uuid)).isEmpty());
+            if(claimed){
+                if(waited && Main.DEBUG) System.out.println("Player data handed over from another server: " + uuid);
+                return;
+            }
+            if(System.currentTimeMillis() > deadline){
+                throw new SQLException("Player data of " + uuid + " is still owned by another server");
+            }
+            waited = true;
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for the player data handoff", e);
+            }
+        }
+    }
+
+    /**
+     * Compare-and-set: claims the rows of these players for this server and increments their data_version,
+     * unless another server owns them. Rows that do not exist yet count as claimed.
+     * @return the players owned by another server
+     */
+    Set<UUID> claim(Connection connection, List<UUID> players) throws SQLException {
+        List<UUID> unclaimed = this.claimRows(connection, players);
+        return unclaimed.isEmpty() ? Set.of() : this.existing(connection, unclaimed);
+    }
+
+    /**
+     * Claims inside a write transaction, fails if any player is owned by another server.
+     * @return the players that had no row yet and must be claimed again after the insert
+     */
+    Set<UUID> claimForWrite(Connection connection, List<UUID> players) throws SQLException {
+        List<UUID> unclaimed = this.claimRows(connection, players);
+        if(unclaimed.isEmpty()) return Set.of();
+
+        Set<UUID> foreign = this.existing(connection, unclaimed);
+        if(!foreign.isEmpty()) throw new LeaseLostException(foreign);
+        return new HashSet<>(unclaimed);
+    }
+
+    private List<UUID> claimRows(Connection connection, List<UUID> players) throws SQLException {
+        String sql = "UPDATE `" + Main.TABLE_NAME + "` SET `" + VERSION_COLUMN + "` = `" + VERSION_COLUMN + "` + 1, `"
+                + OWNER_COLUMN + "` = ?, `" + UNTIL_COLUMN + "` = UNIX_TIMESTAMP() + ? WHERE `uuid` = ? AND (`"
+                + OWNER_COLUMN + "` IS NULL OR `" + OWNER_COLUMN + "` = ? OR `" + UNTIL_COLUMN + "` < UNIX_TIMESTAMP())";
+
+        List<UUID> unclaimed = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (UUID uuid : players) {
+                statement.setString(1, this.serverId);
+                statement.setInt(2, this.leaseSeconds);
+                statement.setBytes(3, UuidUtils.toBytes(uuid));
+                statement.setString(4, this.serverId);
+                statement.addBatch();
+            }
+            int[] counts = statement.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if(counts[i] == 0) unclaimed.add(players.get(i));
+                else this.owned.add(players.get(i));
+            }
+        }
+        return unclaimed;
+    }
+
+    /**
+     * Hands the rows over, used by the last save of a player on this server.
+     */
+    void release(Connection connection, List<UUID> players) throws SQLException {
+        if(players.isEmpty()) return;
+        String sql = "UPDATE `" + Main.TABLE_NAME + "` SET `" + OWNER_COLUMN + "` = NULL, `" + UNTIL_COLUMN + "` = NULL WHERE `uuid` = ? AND `" + OWNER_COLUMN + "` = ?";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (UUID uuid : players) {
+                statement.setBytes(1, UuidUtils.toBytes(uuid));
+                statement.setString(2, this.serverId);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        players.forEach(this.owned::remove);
+    }
+
+    public void release(UUID uuid){
+        if(!this.owned.contains(uuid)) return;
+        try {
+            this.connectionHandler.withConnection(connection -> {
+                this.release(connection, List.of(uuid));
+                return null;
+            });
+        } catch (SQLException e) {
+            Main.getInstance().getLogger().warning("Could not release player data lease of " + uuid + ", it expires in " + this.leaseSeconds + "s: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Extends the leases still in use and releases the others, e.g. of logins that never turned into a join.
+     */
+    public void renew(Predicate<UUID> inUse){
+        List<UUID> unused = this.owned.stream().filter(inUse.negate()).toList();
+        unused.forEach(this::release);
+        if(this.owned.isEmpty()) return;
+
+        try {
+            this.connectionHandler.withConnection(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement("UPDATE `" + Main.TABLE_NAME + "` SET `" + UNTIL_COLUMN
+                        + "` = UNIX_TIMESTAMP() + ? WHERE `" + OWNER_COLUMN + "` = ?")) {
+                    statement.setInt(1, this.leaseSeconds);
+                    statement.setString(2, this.serverId);
+                    return statement.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            Main.getInstance().getLogger().warning("Could not renew player data leases: " + e.getMessage());
+        }
+    }
+
+    public void releaseAll(){
+        try {
+            this.connectionHandler.withConnection(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement("UPDATE `" + Main.TABLE_NAME + "` SET `" + OWNER_COLUMN
+                        + "` = NULL, `" + UNTIL_COLUMN + "` = NULL WHERE `" + OWNER_COLUMN + "` = ?")) {
+                    statement.setString(1, this.serverId);
+                    return statement.executeUpdate();
+                }
+            });
+            this.owned.clear();
+        } catch (SQLException e) {
+            Main.getInstance().getLogger().warning("Could not release player data leases, they expire in " + this.leaseSeconds + "s: " + e.getMessage());
+        }
+    }
+
+    public int getRenewIntervalSeconds(){ return Math.max(1, this.leaseSeconds / 3); }
+
+    private Set<UUID> existing(Connection connection, List<UUID> players) throws SQLException {
+        Set<UUID> existing = new HashSet<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT `uuid` FROM `" + Main.TABLE_NAME
+                + "` WHERE `uuid` IN (?" + ", ?".repeat(players.size() - 1) + ")")) {
+            for (int i = 0; i < players.size(); i++) {
+                statement.setBytes(i + 1, UuidUtils.toBytes(players.get(i)));
+            }
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    existing.add(UuidUtils.fromBytes(result.getBytes("uuid")));
+                }
+            }
+        }
+        return existing;
+    }
+}
@@ -0,0 +1,91 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * All rows of one player save, keyed by table name.
+ * The main table is always written first, module tables follow in insertion order.
+ * Modules that did not change since the last save are left out, see {@link DirtyTracker}.
+ */
+public class PlayerSnapshot {
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final UUID uuid;
+    private final String playerName;
+    private final DirtyTracker dirtyTracker;
+    private final long sequence = SEQUENCE.incrementAndGet();
+    private boolean finalSave = false;
+    private final LinkedHashMap<String, Map<String, Object>> tables = new LinkedHashMap<>();
+    private final EnumMap<SyncModule, DirtyTracker.PersistedModule> trackedModules = new EnumMap<>(SyncModule.class);
+
+    /**
+     * @param dirtyTracker null to collect every module
+     */
+    public PlayerSnapshot(UUID uuid, String playerName, DirtyTracker dirtyTracker){
+        this.uuid = uuid;
+        this.playerName = playerName;
+        this.dirtyTracker = dirtyTracker;
+    }
+
+    public PlayerSnapshot put(String table, Map<String, Object> columns){
+        this.tables.put(table, Collections.unmodifiableMap(new LinkedHashMap<>(columns)));
+        return this;
+    }
+
+    public boolean isDirty(SyncModule module, Object state){
+        return this.dirtyTracker == null || this.dirtyTracker.isDirty(this.uuid, module, state);
+    }
+
+    /**
+     * Remembers the content of a collected module, applied to the tracker once the save succeeded.
+     */
+    public PlayerSnapshot track(SyncModule module, Object state, Map<String, Object> columns){
+        this.trackedModules.put(module, new DirtyTracker.PersistedModule(state, Collections.unmodifiableMap(new HashMap<>(columns))));
+        return this;
+    }
+
+    /**
+     * @return the columns of a module from this snapshot, or as last written if the module was skipped
+     */
+    public Map<String, Object> getModuleColumns(SyncModule module){
+        DirtyTracker.PersistedModule tracked = this.trackedModules.get(module);
+        if(tracked != null) return tracked.columns();
+        return this.dirtyTracker == null ? null : this.dirtyTracker.getPersistedColumns(this.uuid, module);
+    }
+
+    public Map<String, Object> get(String table){ return this.tables.get(table); }
+
+    public HashMap<String, Object> getDataMap(String table){
+        Map<String, Object> columns = this.tables.get(table);
+        return columns == null ? new HashMap<>() : new HashMap<>(columns);
+    }
+
+    /**
+     * Marks the last save of the player on this server, writing it hands the data over to the next server.
+     */
+    public PlayerSnapshot markFinal(){
+        this.finalSave = true;
+        return this;
+    }
+
+    public boolean isFinal(){ return this.finalSave; }
+
+    public boolean isEmpty(){ return this.tables.values().stream().allMatch(Map::isEmpty); }
+
+    public Map<String, Map<String, Object>> getTables(){ return Collections.unmodifiableMap(this.tables); }
+    public Map<SyncModule, DirtyTracker.PersistedModule> getTrackedModules(){ return Collections.unmodifiableMap(this.trackedModules); }
+    public UUID getUuid(){ return this.uuid; }
+    public String getPlayerName(){ return this.playerName; }
+    public long getSequence(){ return this.sequence; }
+
+    /**
+     * @return sequence of the newest snapshot created so far
+     */
+    public static long currentSequence(){ return SEQUENCE.get(); }
+}
@@ -0,0 +1,44 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Player data loaded and decoded off-thread before the join.
+ * Applying it on the player's thread needs no database access or parsing anymore.
+ */
+public class PreloadedPlayerData {
+    private final UUID uuid;
+    private final HashMap<String, Object> mainRow;
+    private final EnumMap<SyncModule, Object> modules = new EnumMap<>(SyncModule.class);
+    private final long loadedAt = System.currentTimeMillis();
+    private final long sequence;
+
+    /**
+     * @param mainRow null if the player has no data yet
+     * @param sequence newest snapshot sequence when the load started, saves after it are not contained
+     */
+    public PreloadedPlayerData(UUID uuid, Map<String, Object> mainRow, long sequence){
+        this.uuid = uuid;
+        this.mainRow = mainRow == null ? null : new HashMap<>(mainRow);
+        this.sequence = sequence;
+    }
+
+    public boolean exists(){ return this.mainRow != null && !this.mainRow.isEmpty(); }
+
+    public void put(SyncModule module, Object decoded){
+        if(decoded != null) this.modules.put(module, decoded);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(SyncModule module){
+        return (T) this.modules.get(module);
+    }
+
+    public HashMap<String, Object> getMainRow(){ return this.mainRow; }
+    public UUID getUuid(){ return this.uuid; }
+    public long getLoadedAt(){ return this.loadedAt; }
+    public long getSequence(){ return this.sequence; }
+}
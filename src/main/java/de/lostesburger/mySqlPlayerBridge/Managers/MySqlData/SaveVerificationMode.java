@@ -0,0 +1,19 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
+
+public enum SaveVerificationMode {
+    // affected rows plus a server side compare of the stored content checksum
+    CHECKSUM,
+    // affected rows only
+    ACKNOWLEDGE,
+    // legacy: downloads the saved row again and compares the inventory length
+    FULL;
+
+    public static SaveVerificationMode fromConfig(String value){
+        if(value == null) return CHECKSUM;
+        try {
+            return SaveVerificationMode.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return CHECKSUM;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
+
+import de.craftcore.craftcore.global.minecraftVersion.Minecraft;
+import de.craftcore.craftcore.global.scheduler.Scheduler;
+import de.craftcore.craftcore.global.scheduler.SchedulerException;
+import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Utils.TickBudgetedTask;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Captures autosave snapshots on the thread owning each player (the main thread, the player's region on Folia),
+ * as many per tick as the budget of {@link TickBudgetedTask} allows. Writing them happens on the database executor.
+ * Manual saves and the first save of new players are captured before queued autosaves.
+ */
+public class SnapshotScheduler {
+    // a region without budget left still captures after this many ticks, autosave must not stall
+    private static final int MAX_DEFERRED_TICKS = 20;
+
+    private final Executor executor;
+    private final ConcurrentLinkedQueue<Capture> priorityQueue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Capture> mainQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mainScheduled = new AtomicBoolean(false);
+
+    public SnapshotScheduler(Executor executor){
+        this.executor = executor;
+    }
+
+    /**
+     * @param priority manual saves, captured before queued autosaves
+     * @param capture runs on the player's thread, returns null to skip the player
+     * @param handoff runs on the executor with every captured snapshot
+     */
+    public void captureAll(Collection<? extends Player> players, boolean priority, Function<Player, PlayerSnapshot> capture, BiConsumer<Player, PlayerSnapshot> handoff){
+        for (Player player : players) {
+            Capture next = new Capture(player, priority, capture, handoff);
+            if(Minecraft.isFolia()) this.scheduleOnRegion(next);
+            else (priority ? this.priorityQueue : this.mainQueue).add(next);
+        }
+        this.scheduleMain();
+    }
+
+    private void scheduleMain(){
+        if((this.priorityQueue.isEmpty() && this.mainQueue.isEmpty()) || !this.mainScheduled.compareAndSet(false, true)) return;
+        Scheduler.run(this::drainMain, Main.getInstance());
+    }
+
+    private void drainMain(){
+        this.mainScheduled.set(false);
+        // at least one capture per tick, even if applies used up the budget
+        Capture next = this.pollMain();
+        while (next != null) {
+            this.capture(next);
+            if(TickBudgetedTask.remainingNanos() <= 0) break;
+            next = this.pollMain();
+        }
+        int left = this.priorityQueue.size() + this.mainQueue.size();
+        if(Main.DEBUG && left > 0){
+            System.out.println("Tick budget used up, " + left + " autosave snapshots left for the next tick");
+        }
+        this.scheduleMain();
+    }
+
+    private Capture pollMain(){
+        Capture next = this.priorityQueue.poll();
+        return next != null ? next : this.mainQueue.poll();
+    }
+
+    private void scheduleOnRegion(Capture next){
+        try {
+            Scheduler.runRegionalScheduler(() -> {
+                if(!next.priority && TickBudgetedTask.remainingNanos() <= 0 && next.deferredTicks++ < MAX_DEFERRED_TICKS){
+                    this.scheduleOnRegion(next);
+                    return;
+                }
+                this.capture(next);
+            }, Main.getInstance(), next.player.getLocation());
+        } catch (SchedulerException e) {
+            Main.getInstance().getLogger().warning("Could not schedule the autosave of " + next.player.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private void capture(Capture next){
+        if(!next.player.isOnline()) return;
+
+        long start = System.nanoTime();
+        PlayerSnapshot snapshot;
+        try {
+            snapshot = next.capture.apply(next.player);
+        } finally {
+            TickBudgetedTask.charge(System.nanoTime() - start);
+        }
+        if(snapshot != null) this.executor.execute(() -> next.handoff.accept(next.player, snapshot));
+    }
+
+    private static final class Capture {
+        private final Player player;
+        private final boolean priority;
+        private final Function<Player, PlayerSnapshot> capture;
+        private final BiConsumer<Player, PlayerSnapshot> handoff;
+        private int deferredTicks = 0;
+
+        private Capture(Player player, boolean priority, Function<Player, PlayerSnapshot> capture, BiConsumer<Player, PlayerSnapshot> handoff){
+            this.player = player;
+            this.priority = priority;
+            this.capture = capture;
+            this.handoff = handoff;
+        }
+    }
+}
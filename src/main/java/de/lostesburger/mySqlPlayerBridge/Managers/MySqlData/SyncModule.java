@@ -0,0 +1,21 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
+
+/**
+ * Independently tracked parts of a player save.
+ * A module is only serialized and written again when its content hash changed since the last successful save.
+ */
+public enum SyncModule {
+    INVENTORY,
+    ENDER_CHEST,
+    ARMOR,
+    GAMEMODE,
+    EXP,
+    HEALTH,
+    MONEY,
+    LOCATION,
+    EFFECTS,
+    ADVANCEMENTS,
+    STATISTICS,
+    HOTBAR_SLOT,
+    SATURATION
+}
@@ -0,0 +1,355 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.MySqlData;
+
+import de.lostesburger.mySqlPlayerBridge.Exceptions.LeaseLostException;
+import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Utils.FileUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only, memory-mapped journal of snapshots that could not be written to the database.
+ * Records are replayed in order once the database is reachable again, the header keeps the replayed position
+ * so a restart never writes a record twice.
+ *
+ * Header: [magic, version, epoch, replayed position]
+ * Record: [magic, epoch, payload length, crc32 of payload, payload]
+ * The epoch changes whenever the journal starts over, old records behind the end are never read again.
+ * A full journal moves its unreplayed records to the front, so a long outage only fills it with records still needed.
+ */
+public class WriteAheadJournal {
+    private static final int FILE_MAGIC = 0x4D50424A;
+    private static final int RECORD_MAGIC = 0x5245434A;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_HEADER_SIZE = 16;
+    private static final int EPOCH_OFFSET = 8;
+    private static final int REPLAYED_OFFSET = 12;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BYTES = 2;
+    private static final byte TYPE_INT = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_FLOAT = 6;
+    private static final byte TYPE_BOOLEAN = 7;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int epoch;
+    private int replayed;
+    private int end;
+    // journaled but not yet replayed records per player
+    private final ConcurrentHashMap<UUID, Integer> pending = new ConcurrentHashMap<>();
+    // held for a whole replay, the journal itself is only locked to read and advance records
+    private final ReentrantLock replayLock = new ReentrantLock();
+
+    public WriteAheadJournal(File file, int capacityBytes) throws IOException {
+        if(!file.getParentFile().exists()) file.getParentFile().mkdirs();
+        boolean existed = file.exists() && file.length() >= HEADER_SIZE;
+
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int capacity = Math.max(capacityBytes, (int) Math.min(Integer.MAX_VALUE, this.channel.size()));
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        if(existed && this.buffer.getInt(0) == FILE_MAGIC && this.buffer.getInt(4) == FORMAT_VERSION){
+            this.epoch = this.buffer.getInt(EPOCH_OFFSET);
+            this.replayed = this.buffer.getInt(REPLAYED_OFFSET);
+            this.scan();
+        }else {
+            this.buffer.putInt(0, FILE_MAGIC);
+            this.buffer.putInt(4, FORMAT_VERSION);
+            this.startOver(0);
+        }
+    }
+
+    public boolean contains(UUID uuid){ return this.pending.containsKey(uuid); }
+
+    public boolean isEmpty(){ return this.pending.isEmpty(); }
+
+    public synchronized int size(){ return this.end - this.replayed; }
+
+    /**
+     * Appends a snapshot and forces it to disk.
+     * @return false if the journal is full or the record could not be written
+     */
+    public synchronized boolean append(PlayerSnapshot snapshot){
+        byte[] payload;
+        try {
+            payload = encode(snapshot);
+        } catch (IOException e) {
+            return false;
+        }
+        if(this.end == this.replayed && this.end != HEADER_SIZE) this.startOver(this.epoch + 1);
+        int size = RECORD_HEADER_SIZE + payload.length;
+        if(this.end + size > this.buffer.capacity() && !(this.compact() && this.end + size <= this.buffer.capacity())) return false;
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int start = this.end;
+        this.buffer.putInt(start + 4, this.epoch);
+        this.buffer.putInt(start + 8, payload.length);
+        this.buffer.putInt(start + 12, (int) crc.getValue());
+        this.buffer.put(start + RECORD_HEADER_SIZE, payload);
+        // the magic goes last, a record torn by a crash is never seen as complete
+        this.buffer.putInt(start, RECORD_MAGIC);
+        this.buffer.force(start, RECORD_HEADER_SIZE + payload.length);
+
+        this.end = start + RECORD_HEADER_SIZE + payload.length;
+        this.pending.merge(snapshot.getUuid(), 1, Integer::sum);
+        return true;
+    }
+
+    /**
+     * Writes the journaled snapshots to the database in order, stops at the first failing write.
+     * Records owned by another server can never be written, they are dumped to a file and skipped.
+     * Only one replay runs at a time, appends do not wait for its database writes.
+     * @return true if the journal is empty afterwards
+     */
+    public boolean replay(PlayerDataWriter writer){
+        this.replayLock.lock();
+        try {
+            int replayedRecords = 0;
+            while (true) {
+                int next;
+                PlayerSnapshot snapshot;
+                synchronized (this) {
+                    if(this.replayed >= this.end) break;
+                    int length = this.buffer.getInt(this.replayed + 8);
+                    next = this.replayed + RECORD_HEADER_SIZE + length;
+                    try {
+                        snapshot = decode(this.readPayload(this.replayed, length));
+                    } catch (IOException e) {
+                        Main.getInstance().getLogger().severe("Skipping unreadable journal record at " + this.replayed + ": " + e.getMessage());
+                        this.advance(next, null);
+                        continue;
+                    }
+                }
+
+                try {
+                    writer.write(List.of(snapshot), Main.modulesManager.saveVerificationMode == SaveVerificationMode.CHECKSUM
+                            ? SaveVerificationMode.CHECKSUM : SaveVerificationMode.ACKNOWLEDGE);
+                } catch (LeaseLostException e) {
+                    String filename = snapshot.getUuid() + " journal " + snapshot.getSequence();
+                    Main.getInstance().getLogger().severe("Journaled player data of " + snapshot.getPlayerName() + " is owned by another server now, saved to plugins/MySqlPlayerBridge/" + filename);
+                    FileUtils.saveMapToFile(filename, flatten(snapshot));
+                } catch (SQLException | RuntimeException e) {
+                    if(Main.DEBUG) System.out.println("Journal replay paused, database not writable: " + e.getMessage());
+                    return false;
+                }
+                // only the replay moves the replayed position, appends in between only moved the end
+                synchronized (this) {
+                    this.advance(next, snapshot.getUuid());
+                }
+                replayedRecords++;
+            }
+
+            if(replayedRecords > 0){
+                Main.getInstance().getLogger().info("Replayed " + replayedRecords + " journaled player saves");
+            }
+            return true;
+        } finally {
+            this.replayLock.unlock();
+        }
+    }
+
+    public synchronized void close(){
+        try {
+            this.buffer.force();
+            this.channel.close();
+        } catch (IOException e) {
+            Main.getInstance().getLogger().warning("Could not close the save journal: " + e.getMessage());
+        }
+    }
+
+    private void advance(int position, UUID uuid){
+        this.replayed = position;
+        this.buffer.putInt(REPLAYED_OFFSET, position);
+        this.buffer.force(0, HEADER_SIZE);
+        if(uuid != null) this.pending.computeIfPresent(uuid, (k, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void startOver(int epoch){
+        this.epoch = epoch;
+        this.replayed = HEADER_SIZE;
+        this.end = HEADER_SIZE;
+        this.buffer.putInt(EPOCH_OFFSET, epoch);
+        this.buffer.putInt(REPLAYED_OFFSET, HEADER_SIZE);
+        this.buffer.force(0, HEADER_SIZE);
+    }
+
+    /**
+     * Copies the records not replayed yet to the front of the journal, then points the header at the copy.
+     * Only done if the copy ends before the old records start, so a crash in between leaves them readable at their old place.
+     * Never done during a replay, it reads records at their position without holding the journal.
+     * @return true if there is more room now
+     */
+    private boolean compact(){
+        int live = this.end - this.replayed;
+        // 4 bytes behind the copy end it, older records there must not be read as part of it after a restart
+        if(this.replayed <= HEADER_SIZE || HEADER_SIZE + live + 4 > this.replayed) return false;
+        if(this.replayLock.isLocked() || !this.replayLock.tryLock()) return false;
+        try {
+            this.buffer.put(HEADER_SIZE, this.buffer, this.replayed, live);
+            this.buffer.putInt(HEADER_SIZE + live, 0);
+            this.buffer.force(HEADER_SIZE, live + 4);
+            this.advance(HEADER_SIZE, null);
+            this.end = HEADER_SIZE + live;
+            if(Main.DEBUG) System.out.println("Compacted the save journal to " + live + " bytes");
+            return true;
+        } finally {
+            this.replayLock.unlock();
+        }
+    }
+
+    /**
+     * Finds the end of the journal after a restart, the first incomplete or foreign record ends it.
+     */
+    private void scan(){
+        int position = this.replayed;
+        while (position + RECORD_HEADER_SIZE <= this.buffer.capacity()) {
+            if(this.buffer.getInt(position) != RECORD_MAGIC || this.buffer.getInt(position + 4) != this.epoch) break;
+            int length = this.buffer.getInt(position + 8);
+            if(length < 0 || position + RECORD_HEADER_SIZE + length > this.buffer.capacity()) break;
+
+            byte[] payload = this.readPayload(position, length);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if((int) crc.getValue() != this.buffer.getInt(position + 12)) break;
+
+            try {
+                this.pending.merge(decode(payload).getUuid(), 1, Integer::sum);
+            } catch (IOException e) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        this.end = position;
+        if(this.end > this.replayed){
+            Main.getInstance().getLogger().warning("Save journal contains " + this.pending.size() + " players not written to the database yet, replaying them once it is reachable");
+        }
+    }
+
+    private byte[] readPayload(int position, int length){
+        byte[] payload = new byte[length];
+        this.buffer.get(position + RECORD_HEADER_SIZE, payload);
+        return payload;
+    }
+
+    private static byte[] encode(PlayerSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(snapshot.getUuid().getMostSignificantBits());
+        out.writeLong(snapshot.getUuid().getLeastSignificantBits());
+        writeString(out, snapshot.getPlayerName());
+        out.writeBoolean(snapshot.isFinal());
+
+        Map<String, Map<String, Object>> tables = snapshot.getTables();
+        out.writeInt(tables.size());
+        for (Map.Entry<String, Map<String, Object>> table : tables.entrySet()) {
+            writeString(out, table.getKey());
+            out.writeInt(table.getValue().size());
+            for (Map.Entry<String, Object> column : table.getValue().entrySet()) {
+                writeString(out, column.getKey());
+                writeValue(out, column.getValue());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static PlayerSnapshot decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        UUID uuid = new UUID(in.readLong(), in.readLong());
+        PlayerSnapshot snapshot = new PlayerSnapshot(uuid, readString(in), null);
+        if(in.readBoolean()) snapshot.markFinal();
+
+        int tables = in.readInt();
+        for (int i = 0; i < tables; i++) {
+            String table = readString(in);
+            int columns = in.readInt();
+            LinkedHashMap<String, Object> values = new LinkedHashMap<>();
+            for (int j = 0; j < columns; j++) {
+                values.put(readString(in), readValue(in));
+            }
+            snapshot.put(table, values);
+        }
+        return snapshot;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if(value == null){
+            out.writeByte(TYPE_NULL);
+        }else if(value instanceof byte[] bytes){
+            out.writeByte(TYPE_BYTES);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }else if(value instanceof Integer number){
+            out.writeByte(TYPE_INT);
+            out.writeInt(number);
+        }else if(value instanceof Long number){
+            out.writeByte(TYPE_LONG);
+            out.writeLong(number);
+        }else if(value instanceof Double number){
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble(number);
+        }else if(value instanceof Float number){
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat(number);
+        }else if(value instanceof Boolean bool){
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean(bool);
+        }else {
+            out.writeByte(TYPE_STRING);
+            writeString(out, String.valueOf(value));
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        return switch (in.readByte()) {
+            case TYPE_NULL -> null;
+            case TYPE_STRING -> readString(in);
+            case TYPE_BYTES -> in.readNBytes(in.readInt());
+            case TYPE_INT -> in.readInt();
+            case TYPE_LONG -> in.readLong();
+            case TYPE_DOUBLE -> in.readDouble();
+            case TYPE_FLOAT -> in.readFloat();
+            case TYPE_BOOLEAN -> in.readBoolean();
+            default -> throw new IOException("Unknown journal value type");
+        };
+    }
+
+    // writeUTF is limited to 64KB, serialized advancements and stats are larger
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return new String(in.readNBytes(in.readInt()), StandardCharsets.UTF_8);
+    }
+
+    private static HashMap<String, Object> flatten(PlayerSnapshot snapshot){
+        HashMap<String, Object> data = new HashMap<>();
+        snapshot.getTables().forEach((table, columns) -> columns.forEach((column, value) -> data.put(table + "." + column, value)));
+        return data;
+    }
+}
@@ -1,14 +1,17 @@
 package de.lostesburger.mySqlPlayerBridge.Managers.PlayerBridge;
 
-import de.craftcore.craftcore.global.scheduler.Scheduler;
+import de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.DatabaseExecutor;
 import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Managers.AutoSync.AutoSyncManager;
 import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.MySqlDataManager;
 import de.lostesburger.mySqlPlayerBridge.NoEntryProtection.NoEntryProtection;
+import de.lostesburger.mySqlPlayerBridge.Utils.Chat;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
@@ -26,6 +29,18 @@ public class PlayerBridgeManager implements Listener {
         this.mySqlDataManager = Main.mySqlConnectionHandler.getMySqlDataManager();
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event){
+        if(event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) return;
+        // loading before the last save is written would hand out older data, the player has to try again
+        if(!this.mySqlDataManager.awaitPendingSave(event.getUniqueId())){
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, Chat.getMessage("sync-failed"));
+            return;
+        }
+        // the login thread waits, so the data is ready before the join
+        CompletableFuture.runAsync(() -> this.mySqlDataManager.prefetch(event.getUniqueId()), this.databaseExecutor()).join();
+    }
+
     @EventHandler(priority = EventPriority.HIGHEST)
     public void onPlayerJoin(PlayerJoinEvent event){
         Player player = event.getPlayer();
@@ -36,22 +51,23 @@ public class PlayerBridgeManager implements Listener {
             existingOp.cancel(true);
         }
 
-        CompletableFuture<Void> operation = CompletableFuture.runAsync(() -> {
-            try {
-                if(this.mySqlDataManager.hasData(player)){
-                    this.mySqlDataManager.applyDataToPlayer(player);
-                    Main.playerManager.sendDataLoadedMessage(player);
-                }else {
-                    if(NoEntryProtection.isTriggered(player)) return;
-                    this.mySqlDataManager.savePlayerData(player, true);
-                    Main.playerManager.sendCreatedDataMessage(player);
-                }
-            } finally {
-                playerOperations.remove(uuid);
+        // prefetched data is applied within the join tick, anything else is loaded on the database executor first
+        CompletableFuture<Boolean> applied = this.mySqlDataManager.applyDataToPlayer(player);
+
+        CompletableFuture<Void> operation = applied.thenComposeAsync(loaded -> {
+            if(loaded){
+                Main.playerManager.sendDataLoadedMessage(player);
+                return CompletableFuture.completedFuture(null);
             }
-        });
+            if(NoEntryProtection.isTriggered(player)) return CompletableFuture.completedFuture(null);
+            // the first save is captured on the player's thread like any other, not on the database executor
+            return this.mySqlDataManager.savePlayerDataAsync(player).thenAccept(saved -> {
+                if(saved) Main.playerManager.sendCreatedDataMessage(player);
+            });
+        }, this.databaseExecutor());
 
         playerOperations.put(uuid, operation);
+        operation.whenComplete((ignored, error) -> playerOperations.remove(uuid, operation));
     }
 
     @EventHandler(priority = EventPriority.HIGHEST)
@@ -59,33 +75,21 @@ public class PlayerBridgeManager implements Listener {
         Player player = event.getPlayer();
         UUID uuid = player.getUniqueId();
 
-        CompletableFuture<Void> existingOp = playerOperations.get(uuid);
-        if (existingOp != null && !existingOp.isDone()) {
-            try {
-                existingOp.get(5, java.util.concurrent.TimeUnit.SECONDS);
-            } catch (Exception e) {
-                Main.getInstance().getLogger().warning("Failed to wait for player operation completion: " + player.getName());
-                if(Main.DEBUG) {
-                    e.printStackTrace();
-                }
-            }
-        }
-
+        // only the snapshot is taken on this thread, writing it happens behind the quit
         try {
-            this.mySqlDataManager.savePlayerData(player, false);
+            this.mySqlDataManager.savePlayerDataOnQuit(player);
         } finally {
             playerOperations.remove(uuid);
+            this.mySqlDataManager.clearSession(uuid);
         }
     }
 
-    private void startAutoSyncTask(){
-        assert this.mySqlDataManager != null;
-        Scheduler.Task task = Scheduler.runTimerAsync(() -> {
-
-            Main.mySqlConnectionHandler.getMySqlDataManager().saveAllOnlinePlayersAsync();
+    private DatabaseExecutor databaseExecutor(){
+        return Main.mySqlConnectionHandler.getDatabaseExecutor();
+    }
 
-        }, Main.modulesManager.syncTaskDelay, Main.modulesManager.syncTaskDelay, Main.getInstance());
-        Main.schedulers.add(task);
+    private void startAutoSyncTask(){
+        new AutoSyncManager();
     }
 
 
@@ -0,0 +1,133 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.ProgressTracker;
+
+import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Serialization.Serialization.AdvancementSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.advancement.Advancement;
+import org.bukkit.advancement.AdvancementProgress;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerAdvancementDoneEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerStatisticIncrementEvent;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the statistics and advancement progress of online players in memory, patched by their events,
+ * so a save only serializes these modules if something changed and never has to read every statistic from the player.
+ * Movement statistics fire no events and criteria can be granted without one, a full rescan (syncTask.progressRescan,
+ * at most the autosave delay) and on quit picks those up.
+ */
+public class ProgressTracker implements Listener {
+    private final ConcurrentHashMap<UUID, PlayerProgress> players = new ConcurrentHashMap<>();
+    private final long rescanMillis;
+
+    public ProgressTracker(){
+        Bukkit.getPluginManager().registerEvents(this, Main.getInstance());
+        this.rescanMillis = Main.modulesManager.syncTaskProgressRescan * 50L;
+    }
+
+    /**
+     * Tracked progress of an online player, read from the player on first use and whenever a rescan is due.
+     */
+    public PlayerProgress get(Player player){
+        PlayerProgress progress = this.players.computeIfAbsent(player.getUniqueId(), uuid -> new PlayerProgress());
+        progress.rescanIfDue(player, this.rescanMillis);
+        return progress;
+    }
+
+    /**
+     * The next {@link #get(Player)} reads everything from the player again, used before the quit save.
+     */
+    public void requestRescan(UUID uuid){
+        PlayerProgress progress = this.players.get(uuid);
+        if(progress != null) progress.requestRescan();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onStatisticIncrement(PlayerStatisticIncrementEvent event){
+        PlayerProgress progress = this.players.get(event.getPlayer().getUniqueId());
+        if(progress == null) return;
+        int id = Main.statsSerializer.getIndex().find(event.getStatistic(), event.getMaterial(), event.getEntityType());
+        if(id >= 0) progress.setStatistic(id, event.getNewValue());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAdvancementDone(PlayerAdvancementDoneEvent event){
+        PlayerProgress progress = this.players.get(event.getPlayer().getUniqueId());
+        if(progress == null) return;
+        AdvancementProgress advancementProgress = event.getPlayer().getAdvancementProgress(event.getAdvancement());
+        progress.setAdvancement(event.getAdvancement(), new AdvancementSerializer.Progress(true, List.copyOf(advancementProgress.getAwardedCriteria())));
+    }
+
+    // after the quit save of PlayerBridgeManager, which runs earlier
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event){
+        this.players.remove(event.getPlayer().getUniqueId());
+    }
+
+    public static class PlayerProgress {
+        private int[] statistics;
+        private long statisticsVersion = 0;
+        private LinkedHashMap<Advancement, AdvancementSerializer.Progress> advancements;
+        private long advancementsVersion = 0;
+        private long nextRescan = 0;
+
+        private synchronized void rescanIfDue(Player player, long rescanMillis){
+            if(System.currentTimeMillis() < this.nextRescan) return;
+            this.nextRescan = System.currentTimeMillis() + rescanMillis;
+
+            if(Main.statsDataManager.isEnabled()){
+                int[] statistics = Main.statsSerializer.read(player);
+                if(this.statistics == null || !Arrays.equals(this.statistics, statistics)){
+                    this.statistics = statistics;
+                    this.statisticsVersion++;
+                }
+            }
+            if(Main.advancementDataManager.isEnabled()){
+                LinkedHashMap<Advancement, AdvancementSerializer.Progress> advancements = Main.advancementSerializer.read(player);
+                if(!advancements.equals(this.advancements)){
+                    this.advancements = advancements;
+                    this.advancementsVersion++;
+                }
+            }
+        }
+
+        private synchronized void requestRescan(){ this.nextRescan = 0; }
+
+        private synchronized void setStatistic(int id, int value){
+            if(this.statistics == null || this.statistics[id] == value) return;
+            this.statistics[id] = value;
+            this.statisticsVersion++;
+        }
+
+        private synchronized void setAdvancement(Advancement advancement, AdvancementSerializer.Progress progress){
+            if(this.advancements == null || progress.equals(this.advancements.get(advancement))) return;
+            this.advancements.put(advancement, progress);
+            this.advancementsVersion++;
+        }
+
+        /**
+         * Changes with every change of a statistic, used as dirty fingerprint.
+         */
+        public synchronized long getStatisticsVersion(){ return this.statisticsVersion; }
+
+        public synchronized int[] copyStatistics(){
+            return this.statistics == null ? new int[0] : this.statistics.clone();
+        }
+
+        public synchronized long getAdvancementsVersion(){ return this.advancementsVersion; }
+
+        public synchronized Map<Advancement, AdvancementSerializer.Progress> copyAdvancements(){
+            return this.advancements == null ? Map.of() : new LinkedHashMap<>(this.advancements);
+        }
+    }
+}
@@ -1,93 +1,77 @@
 package de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers.EffectDataManager;
 
-import de.craftcore.craftcore.global.minecraftVersion.Minecraft;
-import de.craftcore.craftcore.global.mysql.MySqlError;
-import de.craftcore.craftcore.global.mysql.MySqlManager;
-import de.craftcore.craftcore.global.scheduler.Scheduler;
-import de.craftcore.craftcore.global.scheduler.SchedulerException;
+import de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.MySqlConnectionHandler;
 import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.PlayerSnapshot;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.PreloadedPlayerData;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.SyncModule;
+import de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers.SyncDataManager;
 import org.bukkit.entity.Player;
 import org.bukkit.potion.PotionEffect;
 
 import java.util.List;
+import java.sql.SQLException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-public class EffectDataManager {
+public class EffectDataManager implements SyncDataManager {
     private final boolean enabled;
-    private final MySqlManager mySqlManager;
+    private final MySqlConnectionHandler connectionHandler;
 
     public EffectDataManager(){
         this.enabled = Main.modulesManager.syncEffects;
-        this.mySqlManager = Main.mySqlConnectionHandler.getManager();
+        this.connectionHandler = Main.mySqlConnectionHandler;
 
         try {
-            if(!this.mySqlManager.tableExists(Main.TABLE_NAME_EFFECTS)){
+            if(!this.connectionHandler.tableExists(Main.TABLE_NAME_EFFECTS)){
                 throw new RuntimeException("Potion Effect mysql table is missing!");
             }
-        } catch (MySqlError e) {
+        } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void savePlayer(Player player, boolean async){
-        if(async){
-            Scheduler.runAsync(() -> {
-                this.save(player);
-            }, Main.getInstance());
-        }else {
-            this.save(player);
-        }
+    @Override
+    public boolean isEnabled(){ return this.enabled; }
 
-    }
+    @Override
+    public String getTable(){ return Main.TABLE_NAME_EFFECTS; }
 
-    private void save(Player player){
-        if(!this.enabled) return;
-        String serialized = Main.potionSerializer.serialize(player);
-        try {
-            mySqlManager.setOrUpdateEntry(
-                    Main.TABLE_NAME_EFFECTS,
-                    Map.of("uuid", player.getUniqueId().toString()),
-                    Map.of("effects", serialized)
-            );
-        } catch (MySqlError e) {
-            throw new RuntimeException(e);
-        }
-    }
+    @Override
+    public List<String> getColumns(){ return List.of("effects"); }
 
-    public void applyPlayer(Player player){
-        Scheduler.runAsync(() -> {
-            if(!this.enabled) return;
+    @Override
+    public void collect(Player player, PlayerSnapshot snapshot){
+        if(!this.enabled) return;
+        // potion effects are immutable, a copy of the list is enough to compare with
+        List<PotionEffect> effects = List.copyOf(player.getActivePotionEffects());
+        if(!snapshot.isDirty(SyncModule.EFFECTS, effects)) return;
 
-            Map<String, Object> entry;
-            try {
-                entry = mySqlManager.getEntry(Main.TABLE_NAME_EFFECTS,
-                        Map.of("uuid", player.getUniqueId().toString())
-                );
-            } catch (MySqlError e) {
-                throw new RuntimeException(e);
-            }
-            if(entry == null) return;
-            if(entry.isEmpty()) return;
-            String serialized = (String) entry.get("effects");
+        Map<String, Object> columns = Map.of("effects", Main.potionSerializer.serialize(player));
+        snapshot.put(Main.TABLE_NAME_EFFECTS, columns).track(SyncModule.EFFECTS, effects, columns);
+    }
 
-            List<PotionEffect> effects = Main.potionSerializer.deserialize(serialized);
+    /**
+     * Loads and decodes the stored effects, runs off the main thread.
+     */
+    @Override
+    public void load(Map<String, Object> entry, PreloadedPlayerData data){
+        if(!this.enabled) return;
+        if(entry == null) return;
+        if(entry.isEmpty()) return;
+        String serialized = (String) entry.get("effects");
 
-            if(!Minecraft.isFolia()){
-                Scheduler.run(() -> {
-                    player.addPotionEffects(effects);
-                }, Main.getInstance());
-            }else {
-                try {
-                    Scheduler.runRegionalScheduler(() -> {
-                        player.addPotionEffects(effects);
-                    }, Main.getInstance(), player.getLocation());
-                } catch (SchedulerException e) {
-                    throw new RuntimeException(e);
-                }
-            }
+        data.put(SyncModule.EFFECTS, Main.potionSerializer.deserialize(serialized));
+    }
 
-        }, Main.getInstance());
+    @Override
+    public CompletableFuture<Void> apply(Player player, PreloadedPlayerData data){
+        if(!this.enabled) return CompletableFuture.completedFuture(null);
+        List<PotionEffect> effects = data.get(SyncModule.EFFECTS);
+        if(effects == null) return CompletableFuture.completedFuture(null);
 
+        player.addPotionEffects(effects);
+        return CompletableFuture.completedFuture(null);
     }
 
 }
@@ -1,76 +1,69 @@
 package de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers.HotbarSelectionDataManager;
 
-import de.craftcore.craftcore.global.mysql.MySqlError;
-import de.craftcore.craftcore.global.mysql.MySqlManager;
-import de.craftcore.craftcore.global.scheduler.Scheduler;
+import de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.MySqlConnectionHandler;
 import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.PlayerSnapshot;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.PreloadedPlayerData;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.SyncModule;
+import de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers.SyncDataManager;
 import org.bukkit.entity.Player;
+import java.sql.SQLException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-public class HotbarSlotSelectionDataManager {
+public class HotbarSlotSelectionDataManager implements SyncDataManager {
     private final boolean enabled;
-    private final MySqlManager mySqlManager;
+    private final MySqlConnectionHandler connectionHandler;
 
     public HotbarSlotSelectionDataManager(){
         this.enabled = Main.modulesManager.syncSelectedHotbarSlot;
-        this.mySqlManager = Main.mySqlConnectionHandler.getManager();
+        this.connectionHandler = Main.mySqlConnectionHandler;
 
         try {
-            if(!this.mySqlManager.tableExists(Main.TABLE_NAME_SELECTED_HOTBAR_SLOT)){
+            if(!this.connectionHandler.tableExists(Main.TABLE_NAME_SELECTED_HOTBAR_SLOT)){
                 throw new RuntimeException("Selected hotbar slot mysql table is missing!");
             }
-        } catch (MySqlError e) {
+        } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void savePlayer(Player player, boolean async){
-        if(async){
-            Scheduler.runAsync(() -> {
-                this.save(player);
-            }, Main.getInstance());
-        }else {
-            this.save(player);
-        }
+    @Override
+    public boolean isEnabled(){ return this.enabled; }
 
+    @Override
+    public String getTable(){ return Main.TABLE_NAME_SELECTED_HOTBAR_SLOT; }
 
-    }
+    @Override
+    public List<String> getColumns(){ return List.of("slot"); }
 
-    private void save(Player player){
+    @Override
+    public void collect(Player player, PlayerSnapshot snapshot){
         if(!this.enabled) return;
-        try {
-            mySqlManager.setOrUpdateEntry(
-                    Main.TABLE_NAME_SELECTED_HOTBAR_SLOT,
-                    Map.of("uuid", player.getUniqueId().toString()),
-                    Map.of("slot", player.getInventory().getHeldItemSlot())
-            );
-        } catch (MySqlError e) {
-            throw new RuntimeException(e);
-        }
-    }
+        int slot = player.getInventory().getHeldItemSlot();
+        if(!snapshot.isDirty(SyncModule.HOTBAR_SLOT, slot)) return;
 
-    public void applyPlayer(Player player){
-        Scheduler.runAsync(() -> {
-            if(!this.enabled) return;
-
-            Map<String, Object> entry;
-            try {
-                entry = mySqlManager.getEntry(Main.TABLE_NAME_SELECTED_HOTBAR_SLOT,
-                        Map.of("uuid", player.getUniqueId().toString())
-                );
-            } catch (MySqlError e) {
-                throw new RuntimeException(e);
-            }
-            if(entry == null) return;
-            if(entry.isEmpty()) return;
-            int slot = (Integer) entry.get("slot");
+        Map<String, Object> columns = Map.of("slot", slot);
+        snapshot.put(Main.TABLE_NAME_SELECTED_HOTBAR_SLOT, columns).track(SyncModule.HOTBAR_SLOT, slot, columns);
+    }
 
-            Scheduler.run(() -> {
-                this.setHotbarSlot(player, slot);
-            }, Main.getInstance());
+    @Override
+    public void load(Map<String, Object> entry, PreloadedPlayerData data){
+        if(!this.enabled) return;
+        if(entry == null) return;
+        if(entry.isEmpty()) return;
+        data.put(SyncModule.HOTBAR_SLOT, entry.get("slot"));
+    }
 
-        }, Main.getInstance());
+    @Override
+    public CompletableFuture<Void> apply(Player player, PreloadedPlayerData data){
+        if(!this.enabled) return CompletableFuture.completedFuture(null);
+        Integer slot = data.get(SyncModule.HOTBAR_SLOT);
+        if(slot == null) return CompletableFuture.completedFuture(null);
 
+        this.setHotbarSlot(player, slot);
+        return CompletableFuture.completedFuture(null);
     }
 
     private void setHotbarSlot(Player player, int slot) {
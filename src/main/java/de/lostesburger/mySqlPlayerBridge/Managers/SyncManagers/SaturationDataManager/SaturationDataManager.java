@@ -1,81 +1,72 @@
 package de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers.SaturationDataManager;
 
-import de.craftcore.craftcore.global.mysql.MySqlError;
-import de.craftcore.craftcore.global.mysql.MySqlManager;
-import de.craftcore.craftcore.global.scheduler.Scheduler;
+import de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.MySqlConnectionHandler;
 import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.PlayerSnapshot;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.PreloadedPlayerData;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.SyncModule;
+import de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers.SyncDataManager;
 import org.bukkit.entity.Player;
 
+import java.sql.SQLException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-public class SaturationDataManager {
+public class SaturationDataManager implements SyncDataManager {
     private final boolean enabled;
-    private final MySqlManager mySqlManager;
+    private final MySqlConnectionHandler connectionHandler;
 
     public SaturationDataManager(){
         this.enabled = Main.modulesManager.syncSaturation;
-        this.mySqlManager = Main.mySqlConnectionHandler.getManager();
+        this.connectionHandler = Main.mySqlConnectionHandler;
 
         try {
-            if(!this.mySqlManager.tableExists(Main.TABLE_NAME_SATURATION)){
+            if(!this.connectionHandler.tableExists(Main.TABLE_NAME_SATURATION)){
                 throw new RuntimeException("Saturation mysql table is missing!");
             }
-        } catch (MySqlError e) {
+        } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void savePlayer(Player player, boolean async){
-        if(async){
-            Scheduler.runAsync(() -> {
-                this.save(player);
-            }, Main.getInstance());
-        }else {
-            this.save(player);
-        }
+    @Override
+    public boolean isEnabled(){ return this.enabled; }
 
+    @Override
+    public String getTable(){ return Main.TABLE_NAME_SATURATION; }
 
-    }
+    @Override
+    public List<String> getColumns(){ return List.of("saturation", "food_level"); }
 
-    private void save(Player player){
+    @Override
+    public void collect(Player player, PlayerSnapshot snapshot){
         if(!this.enabled) return;
-        try {
-            mySqlManager.setOrUpdateEntry(
-                    Main.TABLE_NAME_SATURATION,
-                    Map.of("uuid", player.getUniqueId().toString()),
-                    Map.of(
-                            "saturation", player.getSaturation(),
-                            "food_level", player.getFoodLevel()
-                    )
-            );
-        } catch (MySqlError e) {
-            throw new RuntimeException(e);
-        }
-    }
+        Map<String, Object> columns = Map.of(
+                "saturation", player.getSaturation(),
+                "food_level", player.getFoodLevel()
+        );
+        if(!snapshot.isDirty(SyncModule.SATURATION, columns)) return;
 
-    public void applyPlayer(Player player){
-        Scheduler.runAsync(() -> {
-            if(!this.enabled) return;
-
-            Map<String, Object> entry;
-            try {
-                entry = mySqlManager.getEntry(Main.TABLE_NAME_SATURATION,
-                        Map.of("uuid", player.getUniqueId().toString())
-                );
-            } catch (MySqlError e) {
-                throw new RuntimeException(e);
-            }
-            if(entry == null) return;
-            if(entry.isEmpty()) return;
-            float saturation = (Float) entry.get("saturation");
-            int food_level = (Integer) entry.get("food_level");
+        snapshot.put(Main.TABLE_NAME_SATURATION, columns).track(SyncModule.SATURATION, columns, columns);
+    }
 
-            Scheduler.run(() -> {
-                player.setSaturation(saturation);
-                player.setFoodLevel(food_level);
-            }, Main.getInstance());
+    @Override
+    public void load(Map<String, Object> entry, PreloadedPlayerData data){
+        if(!this.enabled) return;
+        if(entry == null) return;
+        if(entry.isEmpty()) return;
+        data.put(SyncModule.SATURATION, entry);
+    }
 
-        }, Main.getInstance());
+    @Override
+    public CompletableFuture<Void> apply(Player player, PreloadedPlayerData data){
+        if(!this.enabled) return CompletableFuture.completedFuture(null);
+        Map<String, Object> entry = data.get(SyncModule.SATURATION);
+        if(entry == null) return CompletableFuture.completedFuture(null);
 
+        player.setSaturation((Float) entry.get("saturation"));
+        player.setFoodLevel((Integer) entry.get("food_level"));
+        return CompletableFuture.completedFuture(null);
     }
 }
@@ -1,74 +1,79 @@
 package de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers.StatsDataManager;
 
 
-import de.craftcore.craftcore.global.mysql.MySqlError;
-import de.craftcore.craftcore.global.mysql.MySqlManager;
-import de.craftcore.craftcore.global.scheduler.Scheduler;
+import de.lostesburger.mySqlPlayerBridge.Handlers.MySqlConnection.MySqlConnectionHandler;
 import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.PlayerSnapshot;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.PreloadedPlayerData;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.SyncModule;
+import de.lostesburger.mySqlPlayerBridge.Managers.ProgressTracker.ProgressTracker;
+import de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers.SyncDataManager;
+import de.lostesburger.mySqlPlayerBridge.Serialization.Serialization.StatsSerializer;
 import org.bukkit.entity.Player;
 
+import java.sql.SQLException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-public class StatsDataManager {
+public class StatsDataManager implements SyncDataManager {
     private final boolean enabled;
-    private final MySqlManager mySqlManager;
+    private final MySqlConnectionHandler connectionHandler;
 
     public StatsDataManager() {
         this.enabled = Main.modulesManager.syncAdvancements;
-        this.mySqlManager = Main.mySqlConnectionHandler.getManager();
+        this.connectionHandler = Main.mySqlConnectionHandler;
 
         try {
-            if(!this.mySqlManager.tableExists(Main.TABLE_NAME_STATS)){
+            if(!this.connectionHandler.tableExists(Main.TABLE_NAME_STATS)){
                 throw new RuntimeException("Statistics mysql table is missing!");
             }
-        } catch (MySqlError e) {
+        } catch (SQLException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void savePlayer(Player player, boolean async){
-        if(async){
-            Scheduler.runAsync(() -> {
-                this.save(player);
-            }, Main.getInstance());
-        }else {
-            this.save(player);
-        }
+    @Override
+    public boolean isEnabled(){ return this.enabled; }
 
-    }
+    @Override
+    public String getTable(){ return Main.TABLE_NAME_STATS; }
+
+    @Override
+    public List<String> getColumns(){ return List.of("stats"); }
 
-    private void save(Player player){
+    @Override
+    public void collect(Player player, PlayerSnapshot snapshot){
         if(!this.enabled) return;
-        String serialized = Main.statsSerializer.serialize(player);
-        try {
-            mySqlManager.setOrUpdateEntry(
-                    Main.TABLE_NAME_STATS,
-                    Map.of("uuid", player.getUniqueId().toString()),
-                    Map.of("stats", serialized)
-            );
-        } catch (MySqlError e) {
-            throw new RuntimeException(e);
-        }
+        // the tracker counts changes, only changed statistics are serialized again
+        ProgressTracker.PlayerProgress progress = Main.progressTracker.get(player);
+        long version = progress.getStatisticsVersion();
+        if(!snapshot.isDirty(SyncModule.STATISTICS, version)) return;
+
+        String serialized = Main.statsSerializer.serialize(progress.copyStatistics());
+        Map<String, Object> columns = Map.of("stats", serialized);
+        snapshot.put(Main.TABLE_NAME_STATS, columns).track(SyncModule.STATISTICS, version, columns);
     }
 
-    public void applyPlayer(Player player){
-        Scheduler.runAsync(() -> {
-            if(!this.enabled) return;
+    /**
+     * Loads and parses the stored statistics, runs off the main thread.
+     */
+    @Override
+    public void load(Map<String, Object> entry, PreloadedPlayerData data){
+        if(!this.enabled) return;
+        if(entry == null) return;
+        if(entry.isEmpty()) return;
 
-            Map<String, Object> entry;
-            try {
-                entry = mySqlManager.getEntry(Main.TABLE_NAME_STATS,
-                        Map.of("uuid", player.getUniqueId().toString())
-                );
-            } catch (MySqlError e) {
-                throw new RuntimeException(e);
-            }
-            if(entry == null) return;
-            if(entry.isEmpty()) return;
+        String serialized = (String) entry.get("stats");
+        data.put(SyncModule.STATISTICS, Main.statsSerializer.parse(serialized));
+    }
 
-            String serialized = (String) entry.get("stats");
-            Main.statsSerializer.deserialize(serialized, player, true);
-        }, Main.getInstance());
+    @Override
+    public CompletableFuture<Void> apply(Player player, PreloadedPlayerData data){
+        if(!this.enabled) return CompletableFuture.completedFuture(null);
+        StatsSerializer.StatisticValues stats = data.get(SyncModule.STATISTICS);
+        if(stats == null) return CompletableFuture.completedFuture(null);
 
+        return Main.statsSerializer.apply(stats, player);
     }
 }
@@ -0,0 +1,37 @@
+package de.lostesburger.mySqlPlayerBridge.Managers.SyncManagers;
+
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.PlayerSnapshot;
+import de.lostesburger.mySqlPlayerBridge.Managers.MySqlData.PreloadedPlayerData;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A sync module stored in its own table next to the main table.
+ */
+public interface SyncDataManager {
+    boolean isEnabled();
+
+    String getTable();
+
+    /**
+     * Columns besides uuid, loaded together with the main row.
+     */
+    List<String> getColumns();
+
+    void collect(Player player, PlayerSnapshot snapshot);
+
+    /**
+     * Decodes the module's row, runs off the main thread.
+     * @param entry null if the player has no row in the module table
+     */
+    void load(Map<String, Object> entry, PreloadedPlayerData data);
+
+    /**
+     * Runs on the player's thread.
+     * @return completes once the module is applied, large modules may spread the work over several ticks
+     */
+    CompletableFuture<Void> apply(Player player, PreloadedPlayerData data);
+}
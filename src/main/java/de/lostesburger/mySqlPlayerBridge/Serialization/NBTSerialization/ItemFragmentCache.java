@@ -0,0 +1,85 @@
+package de.lostesburger.mySqlPlayerBridge.Serialization.NBTSerialization;
+
+import org.bukkit.inventory.ItemStack;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU of encoded single items, so identical stacks (full stacks, standard tools, kit items)
+ * only go through NBT-API once. Keyed on the stack's own hash (type, amount and meta) and confirmed with equals.
+ */
+public class ItemFragmentCache {
+    private final int maxSize;
+    private final LinkedHashMap<Key, byte[]> fragments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ItemFragmentCache(int maxSize){
+        this.maxSize = maxSize;
+        this.fragments = new LinkedHashMap<>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest){
+                return this.size() > ItemFragmentCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return the cached encoding or null, the stack is not retained
+     */
+    public byte[] get(ItemStack item){
+        byte[] fragment;
+        synchronized (this.fragments) {
+            fragment = this.fragments.get(new Key(item));
+        }
+        if(fragment != null) this.hits.increment();
+        else this.misses.increment();
+        return fragment;
+    }
+
+    /**
+     * Stores a copy of the stack, inventories change their stacks in place.
+     */
+    public void put(ItemStack item, byte[] fragment){
+        Key key = new Key(item.clone());
+        synchronized (this.fragments) {
+            this.fragments.put(key, fragment);
+        }
+    }
+
+    public int size(){
+        synchronized (this.fragments) {
+            return this.fragments.size();
+        }
+    }
+
+    public long getHits(){ return this.hits.sum(); }
+
+    public long getMisses(){ return this.misses.sum(); }
+
+    public double getHitRate(){
+        long hits = this.getHits();
+        long total = hits + this.getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    private static final class Key {
+        private final ItemStack item;
+        private final int hash;
+
+        private Key(ItemStack item){
+            this.item = item;
+            this.hash = item.hashCode();
+        }
+
+        @Override
+        public int hashCode(){ return this.hash; }
+
+        @Override
+        public boolean equals(Object other){
+            return other instanceof Key key && key.hash == this.hash && key.item.equals(this.item);
+        }
+    }
+}
@@ -1,49 +1,364 @@
 package de.lostesburger.mySqlPlayerBridge.Serialization.NBTSerialization;
 
+import de.lostesburger.mySqlPlayerBridge.Exceptions.NBTSerializationException;
+import de.lostesburger.mySqlPlayerBridge.Serialization.SerializationType;
 import org.bukkit.Bukkit;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.plugin.Plugin;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 public class NBTSerializer {
+    /*
+     * Compressed format: [0x00, version, kind] followed by the payload.
+     * Base64 never contains a zero byte, so legacy rows are told apart by the first byte.
+     */
+    private static final byte FORMAT_MARKER = 0x00;
+    private static final byte FORMAT_VERSION = 1;
+    // gzip compressed binary NBT as written by NBT-API
+    private static final byte KIND_BINARY_NBT = 1;
+    // deflate compressed SNBT, used if the NBT-API version can not write binary NBT
+    private static final byte KIND_DEFLATED_SNBT = 2;
+    // deflate compressed [slot count, per slot: length, SNBT of the single item], empty slots have length 0
+    private static final byte KIND_ITEM_FRAGMENTS = 3;
+    // no payload, the items are stored per slot in their own table
+    private static final byte KIND_SLOT_TABLE = 4;
+    private static final byte[] SLOT_TABLE_REFERENCE = {FORMAT_MARKER, FORMAT_VERSION, KIND_SLOT_TABLE};
+    private static final byte[] NULL_VALUE = "null".getBytes(StandardCharsets.UTF_8);
 
-    private final Method convertItemArrayToNBT;
-    private final Method convertNBTToItemArray;
-    private final Constructor<?> nbtContainerConstructor;
-    private final Method toStringMethod;
+    // null if disabled or the installed NBT-API version can not convert single items
+    private final ItemFragmentCache itemCache;
 
-    public NBTSerializer() throws Exception {
-        Plugin nbtApiPlugin = Bukkit.getPluginManager().getPlugin("NBTAPI");
-        if (nbtApiPlugin == null) {
-            throw new IllegalStateException("NBTAPI Plugin is not loaded!");
+    /**
+     * @param itemCacheSize encoded items kept for the compressed format, 0 disables the cache
+     */
+    public NBTSerializer(int itemCacheSize) throws Exception {
+        try {
+            Bridge.load();
+        } catch (ExceptionInInitializerError e) {
+            if(e.getCause() instanceof Exception cause) throw cause;
+            throw e;
         }
+        this.itemCache = itemCacheSize > 0 && Bridge.ITEM_TO_NBT != null ? new ItemFragmentCache(itemCacheSize) : null;
+    }
 
-        ClassLoader nbtApiClassLoader = nbtApiPlugin.getClass().getClassLoader();
-
-        Class<?> nbtItemClass = Class.forName("de.tr7zw.nbtapi.NBTItem", true, nbtApiClassLoader);
-        convertItemArrayToNBT = nbtItemClass.getDeclaredMethod("convertItemArraytoNBT", ItemStack[].class);
-        Class<?> nbtCompoundClass = Class.forName("de.tr7zw.nbtapi.NBTCompound", true, nbtApiClassLoader);
-        convertNBTToItemArray = nbtItemClass.getDeclaredMethod("convertNBTtoItemArray", nbtCompoundClass);
-
-        Class<?> nbtContainerClass = Class.forName("de.tr7zw.nbtapi.NBTContainer", true, nbtApiClassLoader);
-        nbtContainerConstructor = nbtContainerClass.getConstructor(String.class);
-        toStringMethod = nbtContainerClass.getMethod("toString");
+    /**
+     * @return a Base64 String for {@link SerializationType#NBT_API}, compressed bytes for {@link SerializationType#NBT_API_COMPRESSED}
+     */
+    public Object serialize(ItemStack[] items, SerializationType type) throws Exception {
+        return type == SerializationType.NBT_API_COMPRESSED ? this.serializeCompressed(items) : this.serialize(items);
     }
 
     public String serialize(ItemStack[] items) throws Exception {
-        Object nbtContainer = convertItemArrayToNBT.invoke(null, (Object) items);
-        String json = (String) toStringMethod.invoke(nbtContainer);
+        String json = Bridge.toString(Bridge.toNBT(items));
         return Base64.getEncoder().encodeToString(json.getBytes(StandardCharsets.UTF_8));
     }
 
+    public byte[] serializeCompressed(ItemStack[] items) throws Exception {
+        if(this.itemCache != null) return this.serializeFragments(items);
+
+        Object nbtContainer = Bridge.toNBT(items);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        out.write(new byte[]{FORMAT_MARKER, FORMAT_VERSION, Bridge.WRITE_COMPOUND != null ? KIND_BINARY_NBT : KIND_DEFLATED_SNBT});
+
+        if(Bridge.WRITE_COMPOUND != null){
+            Bridge.writeCompound(nbtContainer, out);
+        }else {
+            try (DeflaterOutputStream deflater = new DeflaterOutputStream(out)) {
+                deflater.write(Bridge.toString(nbtContainer).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Assembles the container from cached encodings of its items, only unknown stacks are converted by NBT-API.
+     */
+    private byte[] serializeFragments(ItemStack[] items) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+        out.write(new byte[]{FORMAT_MARKER, FORMAT_VERSION, KIND_ITEM_FRAGMENTS});
+
+        try (DataOutputStream data = new DataOutputStream(new DeflaterOutputStream(out))) {
+            data.writeInt(items.length);
+            for (ItemStack item : items) {
+                if(item == null || item.getType().isAir()){
+                    data.writeInt(0);
+                    continue;
+                }
+                byte[] fragment = this.serializeItem(item);
+                data.writeInt(fragment.length);
+                data.write(fragment);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private ItemStack[] deserializeFragments(InputStream payload) throws Exception {
+        try (DataInputStream data = new DataInputStream(new InflaterInputStream(payload))) {
+            ItemStack[] items = new ItemStack[data.readInt()];
+            for (int i = 0; i < items.length; i++) {
+                int length = data.readInt();
+                if(length == 0) continue;
+                items[i] = this.deserializeItem(data.readNBytes(length));
+            }
+            return items;
+        }
+    }
+
+    public boolean supportsSingleItems(){ return Bridge.ITEM_TO_NBT != null; }
+
+    /**
+     * SNBT of a single item, taken from the item cache if enabled.
+     * Only available if {@link #supportsSingleItems()}.
+     */
+    public byte[] serializeItem(ItemStack item) throws Exception {
+        byte[] fragment = this.itemCache == null ? null : this.itemCache.get(item);
+        if(fragment == null){
+            fragment = Bridge.toString(Bridge.itemToNBT(item)).getBytes(StandardCharsets.UTF_8);
+            if(this.itemCache != null) this.itemCache.put(item, fragment);
+        }
+        return fragment;
+    }
+
+    public ItemStack deserializeItem(byte[] fragment) throws Exception {
+        if(Bridge.NBT_TO_ITEM == null){
+            throw new NBTSerializationException("Installed NBTAPI version can not read single items", null);
+        }
+        return Bridge.nbtToItem(Bridge.newContainer(new String(fragment, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Stored in an item column whose items live in the slot table.
+     */
+    public static byte[] slotTableReference(){ return SLOT_TABLE_REFERENCE.clone(); }
+
+    public static boolean isSlotTableReference(Object stored){
+        return stored instanceof byte[] bytes && Arrays.equals(bytes, SLOT_TABLE_REFERENCE);
+    }
+
+    /**
+     * Null if the cache is disabled.
+     */
+    public ItemFragmentCache getItemCache(){ return this.itemCache; }
+
+    /**
+     * Reads both the compressed format and legacy Base64 values, as String or as bytes of a BLOB column.
+     */
+    public ItemStack[] deserialize(Object stored) throws Exception {
+        if(stored instanceof byte[] bytes){
+            if(bytes.length > 0 && bytes[0] == FORMAT_MARKER) return this.deserializeCompressed(bytes);
+            return this.deserialize(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return this.deserialize(String.valueOf(stored));
+    }
+
     public ItemStack[] deserialize(String base64) throws Exception {
         String json = new String(Base64.getDecoder().decode(base64), StandardCharsets.UTF_8);
-        Object nbtContainer = nbtContainerConstructor.newInstance(json);
-        Object items = convertNBTToItemArray.invoke(null, nbtContainer);
-        return (ItemStack[]) items;
+        return Bridge.fromNBT(Bridge.newContainer(json));
+    }
+
+    private ItemStack[] deserializeCompressed(byte[] bytes) throws Exception {
+        if(bytes.length < 3 || bytes[1] != FORMAT_VERSION){
+            throw new NBTSerializationException("Unsupported item data format version " + (bytes.length > 1 ? bytes[1] : -1), null);
+        }
+        InputStream payload = new ByteArrayInputStream(bytes, 3, bytes.length - 3);
+
+        Object nbtContainer;
+        switch (bytes[2]) {
+            case KIND_BINARY_NBT -> {
+                if(Bridge.NEW_CONTAINER_STREAM == null){
+                    throw new NBTSerializationException("Installed NBTAPI version can not read binary NBT", null);
+                }
+                nbtContainer = Bridge.newContainer(payload);
+            }
+            case KIND_DEFLATED_SNBT -> {
+                try (InflaterInputStream inflater = new InflaterInputStream(payload)) {
+                    nbtContainer = Bridge.newContainer(new String(inflater.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+            case KIND_ITEM_FRAGMENTS -> {
+                return this.deserializeFragments(payload);
+            }
+            default -> throw new NBTSerializationException("Unknown item data encoding " + bytes[2], null);
+        }
+        return Bridge.fromNBT(nbtContainer);
+    }
+
+    /**
+     * True for missing values and the "null" placeholder written when serialization produced nothing.
+     */
+    public static boolean isAbsent(Object stored){
+        if(stored == null) return true;
+        if(stored instanceof byte[] bytes) return bytes.length == 0 || Arrays.equals(bytes, NULL_VALUE);
+        String value = String.valueOf(stored);
+        return value.isEmpty() || value.equals("null");
+    }
+
+    public static int sizeOf(Object stored){
+        if(stored == null) return 0;
+        if(stored instanceof byte[] bytes) return bytes.length;
+        return String.valueOf(stored).length();
+    }
+
+    /**
+     * NBT-API lives in another plugin's class loader and is only reachable reflectively.
+     * The handles are resolved once and held in static finals with erased signatures, called through invokeExact.
+     * No benchmark against the previous Method.invoke path exists yet, measure before relying on a speedup.
+     */
+    private static final class Bridge {
+        private static final MethodHandle TO_NBT;
+        private static final MethodHandle FROM_NBT;
+        private static final MethodHandle NEW_CONTAINER;
+        private static final MethodHandle TO_STRING;
+        // null if the installed NBT-API version can not read or write binary NBT
+        private static final MethodHandle WRITE_COMPOUND;
+        private static final MethodHandle NEW_CONTAINER_STREAM;
+        // null if the installed NBT-API version can not convert single items
+        private static final MethodHandle ITEM_TO_NBT;
+        private static final MethodHandle NBT_TO_ITEM;
+
+        static {
+            Plugin nbtApiPlugin = Bukkit.getPluginManager().getPlugin("NBTAPI");
+            if (nbtApiPlugin == null) {
+                throw new IllegalStateException("NBTAPI Plugin is not loaded!");
+            }
+
+            try {
+                ClassLoader nbtApiClassLoader = nbtApiPlugin.getClass().getClassLoader();
+                MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+                Class<?> nbtItemClass = Class.forName("de.tr7zw.nbtapi.NBTItem", true, nbtApiClassLoader);
+                Class<?> nbtCompoundClass = Class.forName("de.tr7zw.nbtapi.NBTCompound", true, nbtApiClassLoader);
+                Class<?> nbtContainerClass = Class.forName("de.tr7zw.nbtapi.NBTContainer", true, nbtApiClassLoader);
+
+                TO_NBT = lookup.unreflect(nbtItemClass.getDeclaredMethod("convertItemArraytoNBT", ItemStack[].class))
+                        .asType(MethodType.methodType(Object.class, ItemStack[].class));
+                FROM_NBT = lookup.unreflect(nbtItemClass.getDeclaredMethod("convertNBTtoItemArray", nbtCompoundClass))
+                        .asType(MethodType.methodType(ItemStack[].class, Object.class));
+                NEW_CONTAINER = lookup.unreflectConstructor(nbtContainerClass.getConstructor(String.class))
+                        .asType(MethodType.methodType(Object.class, String.class));
+                TO_STRING = lookup.unreflect(nbtContainerClass.getMethod("toString"))
+                        .asType(MethodType.methodType(String.class, Object.class));
+
+                Method writeCompound = findMethod(nbtCompoundClass, "writeCompound", OutputStream.class);
+                WRITE_COMPOUND = writeCompound == null ? null : lookup.unreflect(writeCompound)
+                        .asType(MethodType.methodType(void.class, Object.class, OutputStream.class));
+                Constructor<?> streamConstructor = findConstructor(nbtContainerClass, InputStream.class);
+                NEW_CONTAINER_STREAM = streamConstructor == null ? null : lookup.unreflectConstructor(streamConstructor)
+                        .asType(MethodType.methodType(Object.class, InputStream.class));
+
+                Method itemToNBT = findMethod(nbtItemClass, "convertItemtoNBT", ItemStack.class);
+                Method nbtToItem = findMethod(nbtItemClass, "convertNBTtoItem", nbtCompoundClass);
+                ITEM_TO_NBT = itemToNBT == null || nbtToItem == null ? null : lookup.unreflect(itemToNBT)
+                        .asType(MethodType.methodType(Object.class, ItemStack.class));
+                NBT_TO_ITEM = nbtToItem == null ? null : lookup.unreflect(nbtToItem)
+                        .asType(MethodType.methodType(ItemStack.class, Object.class));
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        // triggers the static initializer
+        private static void load(){}
+
+        private static Object toNBT(ItemStack[] items) throws Exception {
+            try {
+                return (Object) TO_NBT.invokeExact(items);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        private static ItemStack[] fromNBT(Object compound) throws Exception {
+            try {
+                return (ItemStack[]) FROM_NBT.invokeExact(compound);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        private static Object itemToNBT(ItemStack item) throws Exception {
+            try {
+                return (Object) ITEM_TO_NBT.invokeExact(item);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        private static ItemStack nbtToItem(Object compound) throws Exception {
+            try {
+                return (ItemStack) NBT_TO_ITEM.invokeExact(compound);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        private static Object newContainer(String snbt) throws Exception {
+            try {
+                return (Object) NEW_CONTAINER.invokeExact(snbt);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        private static Object newContainer(InputStream in) throws Exception {
+            try {
+                return (Object) NEW_CONTAINER_STREAM.invokeExact(in);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        private static String toString(Object container) throws Exception {
+            try {
+                return (String) TO_STRING.invokeExact(container);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        private static void writeCompound(Object compound, OutputStream out) throws Exception {
+            try {
+                WRITE_COMPOUND.invokeExact(compound, out);
+            } catch (Throwable t) {
+                throw propagate(t);
+            }
+        }
+
+        private static Exception propagate(Throwable t){
+            if(t instanceof Error error) throw error;
+            return t instanceof Exception exception ? exception : new RuntimeException(t);
+        }
+
+        private static Method findMethod(Class<?> owner, String name, Class<?>... parameters){
+            try {
+                return owner.getMethod(name, parameters);
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        private static Constructor<?> findConstructor(Class<?> owner, Class<?>... parameters){
+            try {
+                return owner.getConstructor(parameters);
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
     }
 }
@@ -3,10 +3,7 @@ package de.lostesburger.mySqlPlayerBridge.Serialization.Serialization;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
-import de.craftcore.craftcore.global.minecraftVersion.Minecraft;
-import de.craftcore.craftcore.global.scheduler.Scheduler;
-import de.craftcore.craftcore.global.scheduler.SchedulerException;
-import de.lostesburger.mySqlPlayerBridge.Main;
+import de.lostesburger.mySqlPlayerBridge.Utils.TickBudgetedTask;
 import org.bukkit.advancement.Advancement;
 import org.bukkit.entity.Player;
 import org.bukkit.Bukkit;
@@ -15,79 +12,125 @@ import org.bukkit.NamespacedKey;
 
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class AdvancementSerializer {
     private final Gson gson = new Gson();
     private final boolean DEBUG = false;
+    // key -> advancement, looked up without touching the server registry for every entry
+    private final ConcurrentHashMap<String, Advancement> advancements = new ConcurrentHashMap<>();
+
+    public AdvancementSerializer() {
+        Iterator<Advancement> iterator = Bukkit.getServer().advancementIterator();
+        while (iterator.hasNext()) {
+            Advancement advancement = iterator.next();
+            this.advancements.put(advancement.getKey().toString(), advancement);
+        }
+    }
 
     public String serialize(Player player) {
-        JsonArray advancementsArray = new JsonArray();
+        return this.serialize(this.read(player));
+    }
+
+    /**
+     * Reads the progress of every advancement the player has started.
+     */
+    public LinkedHashMap<Advancement, Progress> read(Player player) {
+        LinkedHashMap<Advancement, Progress> progressMap = new LinkedHashMap<>();
         Iterator<Advancement> advancements = Bukkit.getServer().advancementIterator();
 
         while (advancements.hasNext()) {
             Advancement advancement = advancements.next();
             AdvancementProgress progress = player.getAdvancementProgress(advancement);
+            Collection<String> awarded = progress.getAwardedCriteria();
+            if (progress.isDone() || !awarded.isEmpty()) {
+                progressMap.put(advancement, new Progress(progress.isDone(), List.copyOf(awarded)));
+            }
+        }
+        return progressMap;
+    }
 
+    public String serialize(Map<Advancement, Progress> progressMap) {
+        JsonArray advancementsArray = new JsonArray();
+        for (Map.Entry<Advancement, Progress> entry : progressMap.entrySet()) {
             JsonObject effectObj = new JsonObject();
-            effectObj.addProperty("type", advancement.getKey().toString());
-            if(DEBUG) System.out.println("[AdvancementSerializer] Advancement namespaced key (serialize): "+advancement.getKey().toString());
-            effectObj.addProperty("done", progress.isDone());
-            effectObj.addProperty("awardedCriteria", String.join(",", progress.getAwardedCriteria()));
-
-            if (progress.isDone() || !progress.getAwardedCriteria().isEmpty()) {
-                advancementsArray.add(effectObj);
-            }
+            effectObj.addProperty("type", entry.getKey().getKey().toString());
+            if(DEBUG) System.out.println("[AdvancementSerializer] Advancement namespaced key (serialize): "+entry.getKey().getKey().toString());
+            effectObj.addProperty("done", entry.getValue().done());
+            effectObj.addProperty("awardedCriteria", String.join(",", entry.getValue().awardedCriteria()));
+            advancementsArray.add(effectObj);
         }
 
         String jsonString = gson.toJson(advancementsArray);
         return Base64.getEncoder().encodeToString(jsonString.getBytes(StandardCharsets.UTF_8));
     }
 
-    public JsonArray deserialize(String base64, Player player, boolean applyAdvancements) {
+    /**
+     * Decodes the stored advancements off the main thread. Unknown advancements and criteria are dropped here,
+     * so applying only has to compare with the player's progress.
+     */
+    public StoredAdvancements parse(String base64) {
         String jsonString = new String(Base64.getDecoder().decode(base64), StandardCharsets.UTF_8);
         JsonArray advancementsArray = gson.fromJson(jsonString, JsonArray.class);
 
+        Advancement[] advancements = new Advancement[advancementsArray.size()];
+        String[][] criteria = new String[advancementsArray.size()][];
+        int count = 0;
         for (int i = 0; i < advancementsArray.size(); i++) {
             JsonObject advancementObj = advancementsArray.get(i).getAsJsonObject();
             String advancementKeyString = advancementObj.get("type").getAsString();
-            boolean done = advancementObj.get("done").getAsBoolean();
             String awardedCriteriaString = advancementObj.get("awardedCriteria").getAsString();
+            if(awardedCriteriaString.isEmpty()) continue;
 
-            if (advancementKeyString.startsWith("minecraft:")) {
-                advancementKeyString = advancementKeyString.substring("minecraft:".length());
+            Advancement advancement = this.getAdvancement(advancementKeyString);
+            if (advancement == null) {
+                if(DEBUG) System.out.println("[AdvancementSerializer] Unknown advancement skipped: " + advancementKeyString);
+                continue;
             }
 
+            Collection<String> known = advancement.getCriteria();
+            String[] awarded = Arrays.stream(awardedCriteriaString.split(",")).filter(known::contains).toArray(String[]::new);
+            if(awarded.length == 0) continue;
 
-            NamespacedKey advancementKey = new NamespacedKey("minecraft", advancementKeyString);
-            if(DEBUG) System.out.println("[AdvancementSerializer] Advancement namespaced key (deserialize): "+advancementKey.toString());
-            if (advancementKey == null) return null;
-
-            Advancement advancement = Bukkit.getAdvancement(advancementKey);
-            if (advancement == null) return null;
+            advancements[count] = advancement;
+            criteria[count++] = awarded;
+        }
+        return new StoredAdvancements(Arrays.copyOf(advancements, count), Arrays.copyOf(criteria, count));
+    }
 
-            AdvancementProgress progress = player.getAdvancementProgress(advancement);
-            Set<String> awardedCriteria = new HashSet<>(Arrays.asList(awardedCriteriaString.split(",")));
-
-            if (applyAdvancements) {
-                if(!Minecraft.isFolia()){
-                    Scheduler.run(() -> {
-                        for (String criterion : awardedCriteria) {
-                            progress.awardCriteria(criterion);
-                        }
-                    }, Main.getInstance());
-                }else {
-                    try {
-                        Scheduler.runRegionalScheduler(() -> {
-                            for (String criterion : awardedCriteria) {
-                                progress.awardCriteria(criterion);
-                            }
-                        }, Main.getInstance(), player.getLocation());
-                    } catch (SchedulerException e) {
-                        throw new RuntimeException(e);
-                    }
-                }
+    /**
+     * Has to run on the player's thread. Only criteria the player is missing are awarded,
+     * spread over several ticks for players with many advancements.
+     */
+    public CompletableFuture<Void> apply(StoredAdvancements stored, Player player) {
+        return TickBudgetedTask.run(player, stored.advancements().length, i -> {
+            AdvancementProgress progress = player.getAdvancementProgress(stored.advancements()[i]);
+            if(progress.isDone()) return;
+
+            Collection<String> remaining = progress.getRemainingCriteria();
+            for (String criterion : stored.criteria()[i]) {
+                if(remaining.contains(criterion)) progress.awardCriteria(criterion);
             }
-        }
-        return advancementsArray;
+        });
     }
+
+    private Advancement getAdvancement(String key) {
+        Advancement advancement = this.advancements.get(key);
+        if(advancement != null) return advancement;
+
+        // advancements of datapacks loaded after startup
+        NamespacedKey namespacedKey = NamespacedKey.fromString(key);
+        if(namespacedKey == null) return null;
+        advancement = Bukkit.getAdvancement(namespacedKey);
+        if(advancement != null) this.advancements.put(key, advancement);
+        return advancement;
+    }
+
+    public record Progress(boolean done, List<String> awardedCriteria) {}
+
+    /**
+     * Stored progress, criteria[i] are the awarded criteria of advancements[i].
+     */
+    public record StoredAdvancements(Advancement[] advancements, String[][] criteria) {}
 }
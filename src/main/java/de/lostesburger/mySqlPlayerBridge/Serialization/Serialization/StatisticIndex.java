@@ -0,0 +1,135 @@
+package de.lostesburger.mySqlPlayerBridge.Serialization.Serialization;
+
+import org.bukkit.Material;
+import org.bukkit.Statistic;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.Player;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All (statistic, sub type) pairs a player can have, built once at startup.
+ * Legacy materials, blocks for item statistics and the other way round are left out up front,
+ * pairs the server still rejects are disabled on their first failure.
+ */
+public class StatisticIndex {
+    private final Entry[] entries;
+    private final Map<String, Entry> byKey;
+    // statistic ordinal -> entry id (untyped) or sub type ordinal -> entry id, -1 if not indexed
+    private final int[][] byStatistic;
+    // set once a pair threw, racy writes only cost one more failing call
+    private final boolean[] disabled;
+
+    @SuppressWarnings("deprecation")
+    public StatisticIndex(){
+        List<Entry> entries = new ArrayList<>();
+        List<Material> blocks = new ArrayList<>();
+        List<Material> items = new ArrayList<>();
+        for (Material material : Material.values()) {
+            if(material.isLegacy()) continue;
+            if(material.isBlock()) blocks.add(material);
+            if(material.isItem()) items.add(material);
+        }
+        List<EntityType> entityTypes = new ArrayList<>();
+        for (EntityType type : EntityType.values()) {
+            if(type != EntityType.UNKNOWN && type.isAlive()) entityTypes.add(type);
+        }
+
+        for (Statistic statistic : Statistic.values()) {
+            switch (statistic.getType()) {
+                case UNTYPED -> entries.add(new Entry(entries.size(), statistic, null, null, statistic.name()));
+                case BLOCK -> blocks.forEach(block -> entries.add(new Entry(entries.size(), statistic, block, null, statistic.name() + ":" + block.name())));
+                case ITEM -> items.forEach(item -> entries.add(new Entry(entries.size(), statistic, item, null, statistic.name() + ":" + item.name())));
+                case ENTITY -> entityTypes.forEach(type -> entries.add(new Entry(entries.size(), statistic, null, type, statistic.name() + ":" + type.name())));
+            }
+        }
+
+        this.entries = entries.toArray(new Entry[0]);
+        HashMap<String, Entry> byKey = new HashMap<>(this.entries.length * 2);
+        for (Entry entry : this.entries) byKey.put(entry.key, entry);
+        this.byKey = Collections.unmodifiableMap(byKey);
+        this.disabled = new boolean[this.entries.length];
+
+        this.byStatistic = new int[Statistic.values().length][];
+        for (Entry entry : this.entries) {
+            int statistic = entry.statistic.ordinal();
+            if(this.byStatistic[statistic] == null){
+                int size = entry.material != null ? Material.values().length : entry.entityType != null ? EntityType.values().length : 1;
+                this.byStatistic[statistic] = new int[size];
+                Arrays.fill(this.byStatistic[statistic], -1);
+            }
+            int subType = entry.material != null ? entry.material.ordinal() : entry.entityType != null ? entry.entityType.ordinal() : 0;
+            this.byStatistic[statistic][subType] = entry.id;
+        }
+    }
+
+    /**
+     * Allocation free lookup for statistic events.
+     * @return the entry id or -1 if the pair is not indexed
+     */
+    public int find(Statistic statistic, Material material, EntityType entityType){
+        int[] ids = this.byStatistic[statistic.ordinal()];
+        if(ids == null) return -1;
+        int subType = material != null ? material.ordinal() : entityType != null ? entityType.ordinal() : 0;
+        return subType < ids.length ? ids[subType] : -1;
+    }
+
+    public int size(){ return this.entries.length; }
+
+    public Entry get(int id){ return this.entries[id]; }
+
+    /**
+     * @param key "STATISTIC" or "STATISTIC:SUBTYPE"
+     * @return null for statistics this server does not know
+     */
+    public Entry get(String key){ return this.byKey.get(key); }
+
+    public boolean isDisabled(Entry entry){ return this.disabled[entry.id]; }
+
+    public void disable(Entry entry){ this.disabled[entry.id] = true; }
+
+    public static final class Entry {
+        private final int id;
+        private final Statistic statistic;
+        private final Material material;
+        private final EntityType entityType;
+        private final String key;
+        // length prefixed UTF-8 key, written as is by the encoder
+        private final byte[] encodedKey;
+
+        private Entry(int id, Statistic statistic, Material material, EntityType entityType, String key){
+            this.id = id;
+            this.statistic = statistic;
+            this.material = material;
+            this.entityType = entityType;
+            this.key = key;
+
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            this.encodedKey = new byte[bytes.length + 1];
+            this.encodedKey[0] = (byte) bytes.length;
+            System.arraycopy(bytes, 0, this.encodedKey, 1, bytes.length);
+        }
+
+        public int read(Player player){
+            if(this.material != null) return player.getStatistic(this.statistic, this.material);
+            if(this.entityType != null) return player.getStatistic(this.statistic, this.entityType);
+            return player.getStatistic(this.statistic);
+        }
+
+        public void write(Player player, int value){
+            if(this.material != null) player.setStatistic(this.statistic, this.material, value);
+            else if(this.entityType != null) player.setStatistic(this.statistic, this.entityType, value);
+            else player.setStatistic(this.statistic, value);
+        }
+
+        public int getId(){ return this.id; }
+        public String getKey(){ return this.key; }
+        public byte[] getEncodedKey(){ return this.encodedKey; }
+    }
+}
@@ -3,173 +3,176 @@ package de.lostesburger.mySqlPlayerBridge.Serialization.Serialization;
 import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
-import de.craftcore.craftcore.global.minecraftVersion.Minecraft;
-import de.craftcore.craftcore.global.scheduler.Scheduler;
 import de.lostesburger.mySqlPlayerBridge.Main;
-import org.bukkit.Statistic;
-import org.bukkit.entity.EntityType;
+import de.lostesburger.mySqlPlayerBridge.Utils.TickBudgetedTask;
 import org.bukkit.entity.Player;
-import org.bukkit.Material;
 import org.bukkit.Bukkit;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
 
 public class StatsSerializer {
+    /*
+     * Binary format: [0x00, version] followed by entries of [key length, UTF-8 key, varint value] up to the end.
+     * Stored as Base64 like the JSON format before it, a JSON array always starts with '['.
+     */
+    private static final byte FORMAT_MARKER = 0x00;
+    private static final byte FORMAT_VERSION = 1;
+
     private final Gson gson = new Gson();
     private final boolean DEBUG = true;
+    private final StatisticIndex index;
 
-    public StatsSerializer() {}
+    public StatsSerializer() {
+        long start = System.currentTimeMillis();
+        this.index = new StatisticIndex();
+        if(Main.DEBUG) System.out.println("Statistic index with " + this.index.size() + " entries built in " + (System.currentTimeMillis() - start) + "ms");
+    }
 
     public String serialize(Player player) {
-        JsonArray statsArray = new JsonArray();
+        return this.serialize(this.read(player));
+    }
 
-        for (Statistic stat : Statistic.values()) {
-            try {
-                JsonObject statObj = new JsonObject();
-                statObj.addProperty("type", stat.name());
-
-                switch (stat.getType()) {
-                    case UNTYPED -> {
-                        int value = player.getStatistic(stat);
-                        if (value != 0) {
-                            statObj.addProperty("value", value);
-                            statsArray.add(statObj);
-                        }
-                    }
-                    case BLOCK -> {
-                        for (Material mat : Material.values()) {
-                            if (mat.isBlock()) {
-                                int value = player.getStatistic(stat, mat);
-                                if (value != 0) {
-                                    JsonObject blockObj = statObj.deepCopy();
-                                    blockObj.addProperty("subType", mat.name());
-                                    blockObj.addProperty("value", value);
-                                    statsArray.add(blockObj);
-                                }
-                            }
-                        }
-                    }
-                    case ITEM -> {
-                        for (Material mat : Material.values()) {
-                            if (mat.isItem()) {
-                                int value = player.getStatistic(stat, mat);
-                                if (value != 0) {
-                                    JsonObject itemObj = statObj.deepCopy();
-                                    itemObj.addProperty("subType", mat.name());
-                                    itemObj.addProperty("value", value);
-                                    statsArray.add(itemObj);
-                                }
-                            }
-                        }
-                    }
-                    case ENTITY -> {
-                        for (EntityType type : EntityType.values()) {
-                            try {
-                                int value = player.getStatistic(stat, type);
-                                if (value != 0) {
-                                    JsonObject entityObj = statObj.deepCopy();
-                                    entityObj.addProperty("subType", type.name());
-                                    entityObj.addProperty("value", value);
-                                    statsArray.add(entityObj);
-                                }
-                            } catch (Exception ignored) {
-                            }
-                        }
-                    }
-                }
+    /**
+     * Reads all indexed statistics of a player.
+     * @return values by index entry id
+     */
+    public int[] read(Player player) {
+        int[] values = new int[this.index.size()];
+        for (int id = 0; id < values.length; id++) {
+            StatisticIndex.Entry entry = this.index.get(id);
+            if(this.index.isDisabled(entry)) continue;
 
+            try {
+                values[id] = entry.read(player);
             } catch (Exception e) {
-                if (DEBUG) Bukkit.getLogger().warning("[StatsSerializer] Fehler bei Statistik: " + stat.name());
+                this.index.disable(entry);
+                if (DEBUG && Main.DEBUG) Bukkit.getLogger().warning("[StatsSerializer] Statistik wird übersprungen: " + entry.getKey());
             }
         }
-
-        String jsonString = gson.toJson(statsArray);
-        return Base64.getEncoder().encodeToString(jsonString.getBytes(StandardCharsets.UTF_8));
+        return values;
     }
 
-    public JsonArray deserialize(String base64, Player player, boolean apply) {
-        String jsonString = new String(Base64.getDecoder().decode(base64), StandardCharsets.UTF_8);
-        JsonArray statsArray = gson.fromJson(jsonString, JsonArray.class);
+    /**
+     * @param values by index entry id, see {@link #read(Player)}
+     */
+    public String serialize(int[] values) {
+        byte[] buffer = new byte[4096];
+        buffer[0] = FORMAT_MARKER;
+        buffer[1] = FORMAT_VERSION;
+        int position = 2;
+
+        for (int id = 0; id < values.length; id++) {
+            int value = values[id];
+            if (value == 0) continue;
+            StatisticIndex.Entry entry = this.index.get(id);
+
+            byte[] key = entry.getEncodedKey();
+            if(position + key.length + 5 > buffer.length){
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + key.length + 5));
+            }
+            System.arraycopy(key, 0, buffer, position, key.length);
+            position += key.length;
+            position = writeVarInt(buffer, position, value);
+        }
+
+        ByteBuffer encoded = Base64.getEncoder().encode(ByteBuffer.wrap(buffer, 0, position));
+        return new String(encoded.array(), encoded.arrayOffset(), encoded.remaining(), StandardCharsets.ISO_8859_1);
+    }
 
+    /**
+     * Decodes the stored statistics, both the binary and the old JSON format. Statistics unknown to this server are dropped.
+     */
+    public StatisticValues parse(String base64) {
+        byte[] bytes = Base64.getDecoder().decode(base64);
+        if(bytes.length > 0 && bytes[0] == FORMAT_MARKER) return this.parseBinary(bytes);
+
+        JsonArray statsArray = gson.fromJson(new String(bytes, StandardCharsets.UTF_8), JsonArray.class);
+        StatisticIndex.Entry[] entries = new StatisticIndex.Entry[statsArray.size()];
+        int[] values = new int[statsArray.size()];
+        int count = 0;
         for (int i = 0; i < statsArray.size(); i++) {
             JsonObject statObj = statsArray.get(i).getAsJsonObject();
-            String typeName = statObj.get("type").getAsString();
-            int value = statObj.get("value").getAsInt();
+            String key = statObj.get("type").getAsString();
+            if(statObj.has("subType")) key += ":" + statObj.get("subType").getAsString();
 
-            Statistic stat;
-            try {
-                stat = Statistic.valueOf(typeName);
-            } catch (IllegalArgumentException e) {
-                if (DEBUG) Bukkit.getLogger().warning("[StatsSerializer] Unbekannte Statistik: " + typeName);
+            StatisticIndex.Entry entry = this.index.get(key);
+            if(entry == null){
+                if (DEBUG) Bukkit.getLogger().warning("[StatsSerializer] Unbekannte Statistik: " + key);
                 continue;
             }
+            entries[count] = entry;
+            values[count++] = statObj.get("value").getAsInt();
+        }
+        return new StatisticValues(Arrays.copyOf(entries, count), Arrays.copyOf(values, count));
+    }
 
-            if (!apply) return null;
-
-                try {
-                    switch (stat.getType()) {
-                        case UNTYPED -> {
-                            if(Minecraft.isFolia()){
-                                Scheduler.runRegionalScheduler(() -> {
-                                    player.setStatistic(stat, value);
-                                }, Main.getInstance(), player.getLocation());
-                            }else {
-                                Scheduler.run(() -> {
-                                    player.setStatistic(stat, value);
-                                }, Main.getInstance());
-                            }
-                        }
-                        case BLOCK -> {
-                            Material block = Material.matchMaterial(statObj.get("subType").getAsString());
-                            if (block != null && block.isBlock()){
-                                if(Minecraft.isFolia()){
-                                    Scheduler.runRegionalScheduler(() -> {
-                                        player.setStatistic(stat, block, value);
-                                    }, Main.getInstance(), player.getLocation());
-                                }else {
-                                    Scheduler.run(() -> {
-                                        player.setStatistic(stat, block, value);
-                                    }, Main.getInstance());
-                                }
-                            }
-                        }
-                        case ITEM -> {
-                            Material item = Material.matchMaterial(statObj.get("subType").getAsString());
-                            if (item != null && item.isItem()){
-                                if(Minecraft.isFolia()){
-                                    Scheduler.runRegionalScheduler(() -> {
-                                        player.setStatistic(stat, item, value);
-                                    }, Main.getInstance(), player.getLocation());
-                                }else {
-                                    Scheduler.run(() -> {
-                                        player.setStatistic(stat, item, value);
-                                    }, Main.getInstance());
-                                }
-                            }
-                        }
-                        case ENTITY -> {
-                            try {
-                                EntityType entity = EntityType.valueOf(statObj.get("subType").getAsString());
-                                if(Minecraft.isFolia()){
-                                    Scheduler.runRegionalScheduler(() -> {
-                                        player.setStatistic(stat, entity, value);
-                                    }, Main.getInstance(), player.getLocation());
-                                }else {
-                                    Scheduler.run(() -> {
-                                        player.setStatistic(stat, entity, value);
-                                    }, Main.getInstance());
-                                }
-                            } catch (Exception ignored) {
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    if (DEBUG) Bukkit.getLogger().warning("[StatsSerializer] Fehler beim Setzen von " + stat.name() + ": " + e.getMessage());
-                }
+    private StatisticValues parseBinary(byte[] bytes) {
+        if(bytes.length < 2 || bytes[1] != FORMAT_VERSION){
+            throw new IllegalArgumentException("Unsupported statistics format version " + (bytes.length > 1 ? bytes[1] : -1));
+        }
+        StatisticIndex.Entry[] entries = new StatisticIndex.Entry[64];
+        int[] values = new int[64];
+        int count = 0;
+
+        int position = 2;
+        while (position < bytes.length) {
+            int keyLength = bytes[position++] & 0xFF;
+            String key = new String(bytes, position, keyLength, StandardCharsets.UTF_8);
+            position += keyLength;
+
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                value |= (b & 0x7F) << shift;
+                if((b & 0x80) == 0) break;
+            }
 
+            StatisticIndex.Entry entry = this.index.get(key);
+            if(entry == null){
+                if (DEBUG) Bukkit.getLogger().warning("[StatsSerializer] Unbekannte Statistik: " + key);
+                continue;
+            }
+            if(count == entries.length){
+                entries = Arrays.copyOf(entries, count * 2);
+                values = Arrays.copyOf(values, count * 2);
+            }
+            entries[count] = entry;
+            values[count++] = value;
         }
+        return new StatisticValues(Arrays.copyOf(entries, count), Arrays.copyOf(values, count));
+    }
 
-        return statsArray;
+    /**
+     * Has to run on the player's thread, thousands of statistics are spread over several ticks.
+     */
+    public CompletableFuture<Void> apply(StatisticValues stats, Player player) {
+        return TickBudgetedTask.run(player, stats.values().length, i -> {
+            StatisticIndex.Entry entry = stats.entries()[i];
+            try {
+                entry.write(player, stats.values()[i]);
+            } catch (Exception e) {
+                if (DEBUG) Bukkit.getLogger().warning("[StatsSerializer] Fehler beim Setzen von " + entry.getKey() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    public StatisticIndex getIndex() { return this.index; }
+
+    private static int writeVarInt(byte[] buffer, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+        return position;
     }
+
+    /**
+     * Decoded statistics, entries[i] is set to values[i].
+     */
+    public record StatisticValues(StatisticIndex.Entry[] entries, int[] values) {}
 }
@@ -2,5 +2,18 @@ package de.lostesburger.mySqlPlayerBridge.Serialization;
 
 public enum SerializationType {
     NBT_API,
-    BUKKIT
+    // versioned, compressed binary NBT stored in a BLOB
+    NBT_API_COMPRESSED,
+    BUKKIT;
+
+    /**
+     * Maps the serialization.mode config value, unknown values fall back to NBT_API.
+     */
+    public static SerializationType fromConfig(String mode){
+        if(mode == null) return NBT_API;
+        return switch (mode.trim().toUpperCase()) {
+            case "NBTAPI_COMPRESSED", "NBT_API_COMPRESSED" -> NBT_API_COMPRESSED;
+            default -> NBT_API;
+        };
+    }
 }
@@ -4,6 +4,7 @@ import de.lostesburger.mySqlPlayerBridge.Main;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Base64;
 import java.util.HashMap;
 
 public class FileUtils {
@@ -24,7 +25,8 @@ public class FileUtils {
             int i = 0;
             for (var entry : data.entrySet()) {
                 String key = escapeJson(entry.getKey());
-                String value = escapeJson(String.valueOf(entry.getValue()));
+                Object raw = entry.getValue();
+                String value = escapeJson(raw instanceof byte[] bytes ? Base64.getEncoder().encodeToString(bytes) : String.valueOf(raw));
                 writer.write("  \"" + key + "\": \"" + value + "\"");
                 if (++i < data.size()) {
                     writer.write(",");
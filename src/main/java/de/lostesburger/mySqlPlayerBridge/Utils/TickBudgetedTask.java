@@ -0,0 +1,112 @@
+package de.lostesburger.mySqlPlayerBridge.Utils;
+
+import de.craftcore.craftcore.global.minecraftVersion.Minecraft;
+import de.craftcore.craftcore.global.scheduler.Scheduler;
+import de.craftcore.craftcore.global.scheduler.SchedulerException;
+import de.lostesburger.mySqlPlayerBridge.Main;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs a long list of small steps on the player's thread, spread over as many ticks as needed.
+ * All budgeted tasks of a thread share one time budget per tick, so many joins in the same tick
+ * take longer to finish instead of stretching the tick.
+ */
+public class TickBudgetedTask {
+    private static final long BUDGET_NANOS_PER_TICK = (long) (Main.config.getDouble("settings.tick-budget-ms", 2) * 1_000_000);
+    // the deadline is only checked every few steps, System.nanoTime is not free either
+    private static final int CHECK_INTERVAL = 32;
+    // [tick, nanos used in that tick] of the current thread
+    private static final ThreadLocal<long[]> USED = ThreadLocal.withInitial(() -> new long[]{-1, 0});
+
+    private final Player player;
+    private final int steps;
+    private final IntConsumer step;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+    private int next = 0;
+
+    private TickBudgetedTask(Player player, int steps, IntConsumer step){
+        this.player = player;
+        this.steps = steps;
+        this.step = step;
+    }
+
+    /**
+     * Has to be called on the player's thread, the first steps run right away if budget is left.
+     * @param step called with 0 until steps - 1, exceptions are the step's own business
+     * @return completes once all steps ran or the player left
+     */
+    public static CompletableFuture<Void> run(Player player, int steps, IntConsumer step){
+        TickBudgetedTask task = new TickBudgetedTask(player, steps, step);
+        task.runSlice();
+        return task.future;
+    }
+
+    /**
+     * Budget the current thread has left in this tick, shared with all budgeted tasks running on it.
+     */
+    public static long remainingNanos(){
+        return BUDGET_NANOS_PER_TICK - usedThisTick()[1];
+    }
+
+    /**
+     * Counts work done outside a budgeted task against the budget of the current thread.
+     */
+    public static void charge(long nanos){
+        usedThisTick()[1] += nanos;
+    }
+
+    private static long[] usedThisTick(){
+        long[] used = USED.get();
+        int tick = Bukkit.getCurrentTick();
+        if(used[0] != tick){
+            used[0] = tick;
+            used[1] = 0;
+        }
+        return used;
+    }
+
+    private void runSlice(){
+        if(!this.player.isOnline()){
+            this.future.complete(null);
+            return;
+        }
+
+        long[] used = usedThisTick();
+        long start = System.nanoTime();
+        long deadline = start + BUDGET_NANOS_PER_TICK - used[1];
+        try {
+            while (this.next < this.steps) {
+                this.step.accept(this.next++);
+                if(this.next % CHECK_INTERVAL == 0 && System.nanoTime() >= deadline) break;
+            }
+        } catch (Throwable t) {
+            this.future.completeExceptionally(t);
+            return;
+        } finally {
+            used[1] += System.nanoTime() - start;
+        }
+
+        if(this.next >= this.steps){
+            this.future.complete(null);
+            return;
+        }
+        if(Main.DEBUG) System.out.println("Tick budget used up, continuing next tick at step " + this.next + "/" + this.steps + " for " + this.player.getName());
+        this.scheduleNextSlice();
+    }
+
+    private void scheduleNextSlice(){
+        if(Minecraft.isFolia()){
+            try {
+                Scheduler.runRegionalScheduler(this::runSlice, Main.getInstance(), this.player.getLocation());
+            } catch (SchedulerException e) {
+                this.future.completeExceptionally(e);
+            }
+        }else {
+            Scheduler.run(this::runSlice, Main.getInstance());
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package de.lostesburger.mySqlPlayerBridge.Utils;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * UUIDs are stored as BINARY(16) primary keys.
+ */
+public class UuidUtils {
+    public static byte[] toBytes(UUID uuid){
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+
+    public static UUID fromBytes(byte[] bytes){
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}